@@ -1,224 +1,1324 @@
 package pc.serie1;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import pc.utils.BoundedRingBuffer;
+import pc.utils.LatencyHistogram;
+import pc.utils.ManagedBlocking;
+import pc.utils.Timeouts;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
 
 public class EventBus {
+    private static final int MAX_RESOLVED_TOPICS = 10_000;
+
+    public enum DeliveryMode {
+        //each subscriber has its own buffer of maxPending events, overflow policies apply
+        SUBSCRIBER_BUFFERS,
+        //the events of a type are written once in a ring of maxPending events read by all its subscribers,
+        // publishers wait for the slowest subscriber, so subscribing with an overflow policy is rejected.
+        // A publisher interrupted or that would wait for a subscriber it's handling the events of discards the event
+        SHARED_RING
+    }
+
     private final int maxPending;
+    private final DeliveryMode deliveryMode;
+    private final ConcurrentHashMap<Class<?>, EventSubscribers> subscribers = new ConcurrentHashMap<>();
+    //subscribed types of each published class, replaced when subscriptions change
+    private volatile ConcurrentHashMap<Class<?>, EventSubscribers[]> resolvedSubscribers = new ConcurrentHashMap<>();
+    private final TopicTrie<EventSubscribers> topics = new TopicTrie<>();
+    //matching patterns of each published topic, replaced when subscriptions change
+    private volatile ConcurrentHashMap<String, EventSubscribers[]> resolvedTopics = new ConcurrentHashMap<>();
+    //events appended on publish, by exact class
+    private final ConcurrentHashMap<Class<?>, EventJournal<?>> journals = new ConcurrentHashMap<>();
+    //latest events published, by cached type
+    private final ConcurrentHashMap<Class<?>, LastValueCache> lastValues = new ConcurrentHashMap<>();
+    //cached types of each published class, replaced when a cache is enabled
+    private volatile ConcurrentHashMap<Class<?>, LastValueCache[]> resolvedLastValues = new ConcurrentHashMap<>();
+    //publishes of cached types hold the read lock, subscriptions of a cached type the write lock
+    private final ReentrantReadWriteLock lastValuesLock = new ReentrantReadWriteLock();
+    private volatile boolean shuttingDown = false;
+
+    //publishes in progress, subscribers only end after the ones that may still add them events,
+    // an AtomicLong so a read of 0 means none is in progress (a LongAdder sum isn't a snapshot)
+    private final AtomicLong publishing = new AtomicLong(0);
+    //set by shutdown once no publish can add events, publishes rejected afterwards still count as in progress
+    private volatile boolean publishesEnded = false;
+
+    //only used by shutdown to wait for the publishes in progress and for the subscriptions to end
     private final Lock lock = new ReentrantLock();
+    private final Condition publishesEndedCondition = lock.newCondition();
     private final Condition finishedCondition = lock.newCondition();
-    private final HashMap<Class, EventSubscribers> subscribers = new HashMap<>();
-    private boolean shuttingDown = false;
+    private final AtomicInteger subscriptionsCounter = new AtomicInteger(0);
+
+    //statistics
+    private final LongAdder publishedCounter = new LongAdder();
+    private final AtomicLong subscriberIds = new AtomicLong(0);
 
     public EventBus(int maxPending) {
+        this(maxPending, DeliveryMode.SUBSCRIBER_BUFFERS);
+    }
+
+    public EventBus(int maxPending, DeliveryMode deliveryMode) {
+        if(maxPending <= 0 || deliveryMode == null)
+            throw new IllegalArgumentException();
         this.maxPending = maxPending;
+        this.deliveryMode = deliveryMode;
     }
 
-    public <E> void subscribeEvent(Consumer<E> handler, Class eventType) throws InterruptedException {
-        Subscriber subscriber = init(handler, eventType);
-        if(subscriber == null)
-            return;
+    public <E> void subscribeEvent(Consumer<E> handler, Class<?> eventType) throws InterruptedException {
+        subscribeEvent(handler, eventType, OverflowPolicy.modeDefault());
+    }
 
-        while (!shuttingDown || subscriber.hasEventsInBuffer()) {
-            Object event = getEvent(subscriber);
+    public <E> void subscribeEvent(Consumer<E> handler, Class<?> eventType, OverflowPolicy overflowPolicy)
+            throws InterruptedException {
+        subscribeEvent(handler, eventType, null, overflowPolicy);
+    }
 
-            if(event != null)
-                subscriber.processEvent(event);
+    /**
+     * Only the events accepted by the filter are delivered, the others never take buffer slots or wake the subscriber.
+     * The filter is evaluated by the publishing threads, so it must be cheap and thread safe.
+     * In shared ring mode the events are written once for all subscribers, so the filter is evaluated when reading.
+     */
+    public <E> void subscribeEvent(Consumer<E> handler, Class<?> eventType, Predicate<? super E> filter)
+            throws InterruptedException {
+        subscribeEvent(handler, eventType, filter, OverflowPolicy.modeDefault());
+    }
+
+    public <E> void subscribeEvent(Consumer<E> handler, Class<?> eventType, Predicate<? super E> filter,
+                                   OverflowPolicy overflowPolicy) throws InterruptedException {
+        Subscriber<E> subscriber = new Subscriber<>(eventType, null, filter, overflowPolicy);
+        if(register(subscriber))
+            consume(subscriber, handler);
+    }
+
+    /**
+     * Like subscribeEvent() but for the events published to the topics matching the pattern.
+     * Topic levels are separated by '.', in patterns '*' matches one level and '#' the remaining levels,
+     * e.g. "orders.eu.*" matches "orders.eu.new" and "orders.#" matches "orders" and "orders.eu.new".
+     */
+    public <E> void subscribeTopic(Consumer<E> handler, String topicPattern) throws InterruptedException {
+        subscribeTopic(handler, topicPattern, OverflowPolicy.modeDefault());
+    }
+
+    public <E> void subscribeTopic(Consumer<E> handler, String topicPattern, OverflowPolicy overflowPolicy)
+            throws InterruptedException {
+        TopicTrie.patternLevels(topicPattern);
+        Subscriber<E> subscriber = new Subscriber<>(null, topicPattern, null, overflowPolicy);
+        if(register(subscriber))
+            consume(subscriber, handler);
+    }
+
+    private <E> void consume(Subscriber<E> subscriber, Consumer<E> handler) throws InterruptedException {
+        try {
+            while (true) {
+                E event = subscriber.getEvent();
+                if(event == null)
+                    return;
+                long start = System.nanoTime();
+                handler.accept(event);
+                subscriber.handled(1, start);
+            }
+        } finally {
+            removeSubscriber(subscriber);
         }
+    }
 
-        signalIfLast(subscriber, eventType);
+    /**
+     * Like subscribeEvent() but the handler receives the pending events in batches of up to maxBatchSize.
+     * After the first event of a batch, waits up to maxLinger for more events to fill it.
+     */
+    public <E> void subscribeEventBatch(Consumer<List<E>> handler, Class<?> eventType, int maxBatchSize, int maxLinger)
+            throws InterruptedException {
+        subscribeEventBatch(handler, eventType, maxBatchSize, maxLinger, OverflowPolicy.modeDefault());
     }
 
-    private void signalIfLast(Subscriber subscriber, Class eventType) {
+    public <E> void subscribeEventBatch(Consumer<List<E>> handler, Class<?> eventType, int maxBatchSize, int maxLinger,
+                                        OverflowPolicy overflowPolicy) throws InterruptedException {
+        subscribeEventBatch(handler, eventType, maxBatchSize, maxLinger, null, overflowPolicy);
+    }
+
+    public <E> void subscribeEventBatch(Consumer<List<E>> handler, Class<?> eventType, int maxBatchSize, int maxLinger,
+                                        Predicate<? super E> filter, OverflowPolicy overflowPolicy)
+            throws InterruptedException {
+        if(maxBatchSize <= 0 || maxLinger < 0)
+            throw new IllegalArgumentException();
+
+        Subscriber<E> subscriber = new Subscriber<>(eventType, null, filter, overflowPolicy);
+        if(!register(subscriber))
+            return;
+
         try {
-            lock.lock();
+            while (true) {
+                E event = subscriber.getEvent();
+                if(event == null)
+                    return;
+
+                List<E> batch = new ArrayList<>();
+                batch.add(event);
+                subscriber.drainTo(batch, maxBatchSize);
 
-            EventSubscribers eventSubscribers = subscribers.get(eventType);
-            eventSubscribers.removeSubscriber(subscriber);
-            if(eventSubscribers.noSubscribers()) {
-                subscribers.remove(eventType);
-                if(subscribers.isEmpty())
-                    finishedCondition.signal();
+                //wait to fill the batch
+                if(batch.size() < maxBatchSize && !Timeouts.noWait(maxLinger)) {
+                    long targetTime = Timeouts.start(maxLinger);
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = Timeouts.remaining(targetTime);
+                        if(Timeouts.isTimeout(remaining))
+                            break;
+
+                        event = subscriber.getEvent(remaining);
+                        if(event == null)
+                            break;
+                        batch.add(event);
+                        subscriber.drainTo(batch, maxBatchSize);
+                    }
+                }
+
+                long start = System.nanoTime();
+                handler.accept(batch);
+                subscriber.handled(batch.size(), start);
             }
         } finally {
-            lock.unlock();
+            removeSubscriber(subscriber);
         }
     }
 
-    private Object getEvent(Subscriber subscriber) throws InterruptedException {
-        try {
-            lock.lock();
+    /**
+     * Subscribes without blocking the calling thread, the handler is executed on the pool only while the
+     * subscription has pending events, one event at a time and in the order they were published.
+     * Exceptions thrown by the handler go to the exception handler of the pool.
+     * Ends on shutdown(), after processing the pending events, or on Subscription.unsubscribe().
+     */
+    public <E> Subscription subscribeEventAsync(Consumer<E> handler, Class<?> eventType,
+                                                SimpleThreadPoolExecutor pool) {
+        return subscribeEventAsync(handler, eventType, pool, OverflowPolicy.modeDefault());
+    }
 
-            if(subscriber.hasEventsInBuffer())
-                return subscriber.getEvent();
+    public <E> Subscription subscribeEventAsync(Consumer<E> handler, Class<?> eventType, SimpleThreadPoolExecutor pool,
+                                                OverflowPolicy overflowPolicy) {
+        return subscribeEventAsync(handler, eventType, null, pool, overflowPolicy);
+    }
 
-            if(shuttingDown)
-                return null;
+    public <E> Subscription subscribeEventAsync(Consumer<E> handler, Class<?> eventType, Predicate<? super E> filter,
+                                                SimpleThreadPoolExecutor pool, OverflowPolicy overflowPolicy) {
+        return subscribeAsync(new AsyncSubscriber<>(eventType, null, filter, overflowPolicy, handler, pool,
+                Long.MAX_VALUE, null));
+    }
 
-            subscribers.get(subscriber.subscriptionType).waitEvent.await();
+    public <E> Subscription subscribeTopicAsync(Consumer<E> handler, String topicPattern,
+                                                SimpleThreadPoolExecutor pool) {
+        return subscribeTopicAsync(handler, topicPattern, pool, OverflowPolicy.modeDefault());
+    }
+
+    public <E> Subscription subscribeTopicAsync(Consumer<E> handler, String topicPattern, SimpleThreadPoolExecutor pool,
+                                                OverflowPolicy overflowPolicy) {
+        TopicTrie.patternLevels(topicPattern);
+        return subscribeAsync(new AsyncSubscriber<>(null, topicPattern, null, overflowPolicy, handler, pool,
+                Long.MAX_VALUE, null));
+    }
+
+    /**
+     * The events published with exactly this class are appended to the journal before being delivered,
+     * so subscribeEventFrom() can replay them. A type has at most one journal.
+     */
+    public <E> void attachJournal(Class<E> eventType, EventJournal<? super E> journal) {
+        if(eventType == null || journal == null)
+            throw new IllegalArgumentException();
+        if(journals.putIfAbsent(eventType, journal) != null)
+            throw new IllegalStateException("the type already has a journal");
+    }
+
+    /**
+     * Like subscribeEvent() but first replays from the journal of the type the events from fromSequence on,
+     * then switches to the published events without missing or repeating any of them.
+     * The handler also receives the sequence of each event, so a restarted subscriber can continue after the
+     * last one it handled. Only the events published with exactly the journaled type are delivered.
+     * Throws IllegalStateException if the type has no journal or the bus is in shared ring mode.
+     */
+    public <E> void subscribeEventFrom(ObjLongConsumer<E> handler, Class<?> eventType, long fromSequence)
+            throws InterruptedException {
+        EventJournal<?> journal = journals.get(eventType);
+        if(journal == null || deliveryMode == DeliveryMode.SHARED_RING)
+            throw new IllegalStateException();
 
-            return subscriber.getEvent();
+        JournalSubscriber subscriber = new JournalSubscriber(eventType, journal.reader(fromSequence));
+        if(!register(subscriber))
+            return;
+
+        try {
+            while (true) {
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+                Sequenced event = subscriber.getEvent();
+                if(event == null)
+                    return;
+                //the journal of the type only has events of the type
+                @SuppressWarnings("unchecked")
+                E typed = (E) event.event;
+                long start = System.nanoTime();
+                handler.accept(typed, event.sequence);
+                subscriber.handled(1, start);
+            }
         } finally {
-            lock.unlock();
+            removeSubscriber(subscriber);
         }
     }
 
-    private <E> Subscriber init(Consumer<E> handler, Class eventType) {
+    /**
+     * Keeps the latest event published of this type, or of a subtype, new subscriptions of the type receive it before
+     * the events published after them. Not available in shared ring mode, the ring has no buffer to put it.
+     */
+    public void enableLastValueCache(Class<?> eventType) {
+        enableLastValueCache(eventType, null);
+    }
+
+    /**
+     * Like enableLastValueCache(eventType) but keeps the latest event of each key, so a new subscription receives
+     * the current state of every key. Keys are never removed, they must be a bounded set.
+     * A new subscription receives the cached events ahead of its buffer, they neither take its room nor go through
+     * its overflow policy.
+     */
+    public <E> void enableLastValueCache(Class<?> eventType, Function<? super E, ?> keyExtractor) {
+        if(eventType == null)
+            throw new IllegalArgumentException();
+        if(deliveryMode == DeliveryMode.SHARED_RING)
+            throw new IllegalStateException();
+        //only applied to the events of the type
+        @SuppressWarnings("unchecked")
+        Function<Object, Object> extractor = (Function<Object, Object>) keyExtractor;
+        lastValuesLock.writeLock().lock();
         try {
-            lock.lock();
+            if(lastValues.putIfAbsent(eventType, new LastValueCache(extractor)) != null)
+                throw new IllegalStateException("the type already has a last value cache");
+            resolvedLastValues = new ConcurrentHashMap<>();
+        } finally {
+            lastValuesLock.writeLock().unlock();
+        }
+    }
 
-            if(shuttingDown)
-                return null;
+    /**
+     * Like subscribeEventAsync() but the handler only receives the events requested with Subscription.request(),
+     * the others wait in the subscription buffer where the overflow policy applies, so with block() the publishers
+     * wait for demand. After the last event, when the bus is shutdown, onShutdown is executed on the pool.
+     * shutdown() waits for the pending events to be requested, unless the subscription is cancelled.
+     */
+    public <E> Subscription subscribeEventOnDemand(Consumer<E> handler, Class<?> eventType, SimpleThreadPoolExecutor pool,
+                                                   OverflowPolicy overflowPolicy, Runnable onShutdown) {
+        return subscribeEventOnDemand(handler, eventType, pool, overflowPolicy, onShutdown, null);
+    }
 
-            EventSubscribers eventSubscribers = subscribers.get(eventType);
-            if(eventSubscribers == null) {
-                eventSubscribers = new EventSubscribers();
-                subscribers.put(eventType, eventSubscribers);
-            }
+    // onRejected is executed, on the thread that scheduled the drain, if the pool rejects it, the subscription ends
+    public <E> Subscription subscribeEventOnDemand(Consumer<E> handler, Class<?> eventType, SimpleThreadPoolExecutor pool,
+                                                   OverflowPolicy overflowPolicy, Runnable onShutdown,
+                                                   Consumer<? super RejectedExecutionException> onRejected) {
+        return subscribeAsync(new AsyncSubscriber<>(eventType, null, null, overflowPolicy, handler, pool, 0,
+                onShutdown, onRejected));
+    }
 
-            Subscriber<E> subscriber = new Subscriber<>(handler, eventType);
-            eventSubscribers.addSubscriber(subscriber);
-            return subscriber;
+    private Subscription subscribeAsync(AsyncSubscriber<?> subscriber) {
+        if(!register(subscriber))
+            subscriber.ended();
+        return new Subscription(subscriber);
+    }
+
+    private boolean register(Subscriber<?> subscriber) {
+        if(deliveryMode == DeliveryMode.SHARED_RING && subscriber.overflowPolicy.kind != OverflowPolicy.Kind.MODE_DEFAULT)
+            throw new IllegalArgumentException();
+
+        //counted before checking shuttingDown, so shutdown can't miss it
+        subscriptionsCounter.incrementAndGet();
+        if(shuttingDown) {
+            subscriptionEnded();
+            return false;
+        }
+
+        if(subscriber.subscriptionTopic != null) {
+            topics.compute(subscriber.subscriptionTopic, eventSubscribers -> {
+                if(eventSubscribers == null)
+                    eventSubscribers = new EventSubscribers(subscriber.subscriptionTopic);
+                eventSubscribers.add(subscriber);
+                return eventSubscribers;
+            });
+            invalidateResolvedSubscribers();
+            return true;
+        }
+
+        LastValueCache cache = lastValues.get(subscriber.subscriptionType);
+        if(cache == null) {
+            addSubscriber(subscriber);
+            return true;
+        }
+        //no publish of a cached type is in progress: the cached events are the latest of the publishes completed,
+        // the ones started afterwards are delivered live after them
+        lastValuesLock.writeLock().lock();
+        try {
+            subscriber.cachedEvents = new ArrayDeque<>(cache.values.values());
+            addSubscriber(subscriber);
         } finally {
-            lock.unlock();
+            lastValuesLock.writeLock().unlock();
+        }
+        //an async subscription schedules a drain for them
+        subscriber.wake();
+        return true;
+    }
+
+    private void addSubscriber(Subscriber<?> subscriber) {
+        subscribers.compute(subscriber.subscriptionType, (type, eventSubscribers) -> {
+            if(eventSubscribers == null)
+                eventSubscribers = new EventSubscribers(type.getName());
+            eventSubscribers.add(subscriber);
+            return eventSubscribers;
+        });
+        invalidateResolvedSubscribers();
+    }
+
+    // false if the subscriber had already ended
+    private boolean removeSubscriber(Subscriber<?> subscriber) {
+        if(!subscriber.ended())
+            return false;
+
+        if(subscriber.subscriptionTopic != null) {
+            topics.compute(subscriber.subscriptionTopic, eventSubscribers -> {
+                eventSubscribers.remove(subscriber);
+                return eventSubscribers.subscribers.length == 0 ? null : eventSubscribers;
+            });
+        } else {
+            subscribers.computeIfPresent(subscriber.subscriptionType, (type, eventSubscribers) -> {
+                eventSubscribers.remove(subscriber);
+                return eventSubscribers.subscribers.length == 0 ? null : eventSubscribers;
+            });
+        }
+        invalidateResolvedSubscribers();
+        subscriptionEnded();
+        return true;
+    }
+
+    private void subscriptionEnded() {
+        if(subscriptionsCounter.decrementAndGet() == 0 && shuttingDown) {
+            try {
+                lock.lock();
+                finishedCondition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void publishEnded() {
+        //the last publish in progress when the bus is shutdown releases it
+        if(publishing.decrementAndGet() == 0 && shuttingDown) {
+            try {
+                lock.lock();
+                publishesEndedCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     public <E> void publishEvent(E message) throws IllegalStateException {
+        publishing.incrementAndGet();
         try {
-            lock.lock();
-
             if(shuttingDown)
                 throw new IllegalStateException();
-            if(subscribers.isEmpty())
-                return;
 
-            Class eventType = message.getClass();
-            EventSubscribers<E> eventSubscribers = subscribers.get(eventType);
-            if(eventSubscribers != null && eventSubscribers.hasSubscribers()) {
-                eventSubscribers.addToAllSubscribers(message);
-                eventSubscribers.waitEvent.signalAll();
+            //appended first, a subscriber going live either replays the event or receives it
+            //attached for the exact class of the message
+            @SuppressWarnings("unchecked")
+            EventJournal<Object> journal = (EventJournal<Object>) journals.get(message.getClass());
+            long sequence = journal != null ? journal.append(message) : -1;
+
+            //cached and delivered as one step for the subscriptions of cached types
+            LastValueCache[] caches = resolveLastValueCaches(message.getClass());
+            if(caches.length > 0)
+                lastValuesLock.readLock().lock();
+            try {
+                for (LastValueCache cache : caches)
+                    cache.put(message);
+
+                publishedCounter.increment();
+                for (EventSubscribers eventSubscribers : resolveSubscribers(message.getClass()))
+                    eventSubscribers.publish(message, sequence);
+            } finally {
+                if(caches.length > 0)
+                    lastValuesLock.readLock().unlock();
             }
         } finally {
-            lock.unlock();
+            publishEnded();
         }
     }
 
-    public void shutdown() {
+    // the subscribers of the patterns matching the topic
+    public <E> void publishEvent(String topic, E message) throws IllegalStateException {
+        publishing.incrementAndGet();
         try {
-            lock.lock();
+            if(shuttingDown)
+                throw new IllegalStateException();
 
-            shuttingDown = true;
+            publishedCounter.increment();
+            for (EventSubscribers eventSubscribers : resolveTopicSubscribers(topic))
+                eventSubscribers.publish(message, -1);
+        } finally {
+            publishEnded();
+        }
+    }
 
-            if(subscribers.isEmpty())
-                return;
+    private EventSubscribers[] resolveTopicSubscribers(String topic) {
+        //read before the index, like the resolved subscribers of types
+        ConcurrentHashMap<String, EventSubscribers[]> resolved = resolvedTopics;
+
+        //fast path
+        EventSubscribers[] eventSubscribers = resolved.get(topic);
+        if(eventSubscribers != null)
+            return eventSubscribers;
+
+        List<EventSubscribers> matching = topics.match(topic);
+        eventSubscribers = matching.toArray(new EventSubscribers[matching.size()]);
+        //topics can be unbounded, like ids in the last level
+        if(resolved.size() < MAX_RESOLVED_TOPICS)
+            resolved.put(topic, eventSubscribers);
+        return eventSubscribers;
+    }
+
+    private EventSubscribers[] resolveSubscribers(Class<?> eventClass) {
+        //the cache is read before the registry, so a resolution racing with a subscription change
+        // can only be stored in the cache being replaced
+        ConcurrentHashMap<Class<?>, EventSubscribers[]> resolved = resolvedSubscribers;
+
+        //fast path
+        EventSubscribers[] eventSubscribers = resolved.get(eventClass);
+        if(eventSubscribers != null)
+            return eventSubscribers;
+
+        ArrayList<EventSubscribers> matching = new ArrayList<>();
+        for (Class<?> type : supertypes(eventClass)) {
+            EventSubscribers typeSubscribers = subscribers.get(type);
+            if(typeSubscribers != null)
+                matching.add(typeSubscribers);
+        }
+        eventSubscribers = matching.toArray(new EventSubscribers[matching.size()]);
+        resolved.put(eventClass, eventSubscribers);
+        return eventSubscribers;
+    }
+
+    // the class itself, its superclasses and all the interfaces they implement
+    private LastValueCache[] resolveLastValueCaches(Class<?> eventClass) {
+        //read before the caches, like the resolved subscribers
+        ConcurrentHashMap<Class<?>, LastValueCache[]> resolved = resolvedLastValues;
+
+        //fast path
+        LastValueCache[] caches = resolved.get(eventClass);
+        if(caches != null)
+            return caches;
+
+        ArrayList<LastValueCache> matching = new ArrayList<>();
+        for (Class<?> type : supertypes(eventClass)) {
+            LastValueCache cache = lastValues.get(type);
+            if(cache != null)
+                matching.add(cache);
+        }
+        caches = matching.toArray(new LastValueCache[0]);
+        resolved.put(eventClass, caches);
+        return caches;
+    }
+
+    private static Set<Class<?>> supertypes(Class<?> eventClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (Class<?> c = eventClass; c != null; c = c.getSuperclass())
+            addWithInterfaces(c, types);
+        return types;
+    }
+
+    private static void addWithInterfaces(Class<?> type, Set<Class<?>> types) {
+        if(!types.add(type))
+            return;
+        for (Class<?> i : type.getInterfaces())
+            addWithInterfaces(i, types);
+    }
+
+    // must be called after changing the registry
+    private void invalidateResolvedSubscribers() {
+        resolvedSubscribers = new ConcurrentHashMap<>();
+        resolvedTopics = new ConcurrentHashMap<>();
+    }
+
+    public EventBusStats getStats() {
+        List<EventBusStats.EventTypeStats> eventTypes = new ArrayList<>();
+        List<EventSubscribers> all = new ArrayList<>(subscribers.values());
+        all.addAll(topics.values());
+        for (EventSubscribers eventSubscribers : all) {
+            List<EventBusStats.SubscriberStats> subscriberStats = new ArrayList<>();
+            for (Subscriber<?> subscriber : eventSubscribers.subscribers)
+                subscriberStats.add(subscriber.getStats());
+            eventTypes.add(new EventBusStats.EventTypeStats(eventSubscribers.name,
+                    eventSubscribers.publishedCounter.sum(), subscriberStats));
+        }
+        return new EventBusStats(publishedCounter.sum(), subscriptionsCounter.get(), eventTypes);
+    }
+
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("pc.serie1:type=EventBus,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsMBean(), objectName);
+        return objectName;
+    }
 
-            subscribers.values().forEach(eventSubscribers -> eventSubscribers.waitEvent.signalAll());
+    // for the sources of events outside the bus, like the imports of a SharedMemoryTransport
+    boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    public void shutdown() {
+        shuttingDown = true;
 
-            while(true) {
+        try {
+            lock.lock();
+            //no event is added after the publishes in progress end
+            while (publishing.get() != 0) {
                 try {
-                    finishedCondition.await();
+                    publishesEndedCondition.await();
                 } catch (InterruptedException e) {
                     //ignore
                 }
+            }
+        } finally {
+            lock.unlock();
+        }
+        publishesEnded = true;
 
-                if(subscribers.isEmpty())
-                    return;
+        subscribers.values().forEach(EventSubscribers::wakeAllSubscribers);
+        topics.values().forEach(EventSubscribers::wakeAllSubscribers);
+
+        try {
+            lock.lock();
+            while (subscriptionsCounter.get() != 0) {
+                try {
+                    finishedCondition.await();
+                } catch (InterruptedException e) {
+                    //ignore
+                }
             }
         } finally {
             lock.unlock();
         }
     }
 
-    private class EventSubscribers<E> {
-        private final Condition waitEvent = lock.newCondition();
-        private final LinkedList<Subscriber<E>> subscribers = new LinkedList<>();
+    private class EventSubscribers {
+        //the type name or the topic pattern
+        private final String name;
+        //copied on write, publishers iterate without locks, membership changes are serialized by the registry
+        private volatile Subscriber<?>[] subscribers = new Subscriber<?>[0];
+        //only in shared ring mode
+        private final SharedEventRing ring = deliveryMode == DeliveryMode.SHARED_RING ? new SharedEventRing(maxPending) : null;
+        private final LongAdder publishedCounter = new LongAdder();
 
-        private boolean noSubscribers() {
-            return subscribers.isEmpty();
+        private EventSubscribers(String name) {
+            this.name = name;
         }
 
-        private boolean hasSubscribers() {
-            try {
-                lock.lock();
-                return !subscribers.isEmpty();
-            } finally {
-                lock.unlock();
+        // the sequence of the event in the journal of its class, -1 if it has none
+        private void publish(Object message, long sequence) {
+            publishedCounter.increment();
+            if(ring == null) {
+                for (Subscriber<?> subscriber : subscribers)
+                    subscriber.deliver(message, sequence);
+                return;
+            }
+
+            if(ring.publish(message) != null) {
+                //no subscriber receives it
+                for (Subscriber<?> subscriber : subscribers)
+                    subscriber.dropped();
+                return;
+            }
+            if(ring.idleSubscribers.get() > 0)
+                wakeAllSubscribers();
+        }
+
+        // must be called inside the registry's compute
+        private void add(Subscriber<?> subscriber) {
+            if(ring != null)
+                subscriber.attach(ring.addCursor());
+
+            Subscriber<?>[] current = subscribers;
+            Subscriber<?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscriber;
+            subscribers = updated;
+        }
+
+        // must be called inside the registry's compute
+        private void remove(Subscriber<?> subscriber) {
+            if(ring != null)
+                subscriber.detach();
+
+            Subscriber<?>[] current = subscribers;
+            Subscriber<?>[] updated = new Subscriber<?>[current.length - 1];
+            int i = 0;
+            for (Subscriber<?> s : current) {
+                if(s != subscriber)
+                    updated[i++] = s;
+            }
+            subscribers = updated;
+        }
+
+        private void wakeAllSubscribers() {
+            for (Subscriber<?> subscriber : subscribers)
+                subscriber.wake();
+        }
+    }
+
+    /**
+     * What a subscription does with the events published while its buffer has maxPending events.
+     * The same policy instance can be used by several subscriptions, its dropped count is the sum of theirs.
+     */
+    public static final class OverflowPolicy {
+        //MODE_DEFAULT is used by the subscribe methods without a policy, it drops the newest event like
+        // DROP_NEWEST with subscriber buffers, in SHARED_RING mode the ring makes publishers wait instead
+        private enum Kind { MODE_DEFAULT, DROP_NEWEST, DROP_OLDEST, BLOCK, CONFLATE }
+
+        private final Kind kind;
+        private final int timeout;
+        private final Function<Object, Object> keyExtractor;
+        private final LongAdder droppedCounter = new LongAdder();
+
+        private OverflowPolicy(Kind kind, int timeout, Function<Object, Object> keyExtractor) {
+            this.kind = kind;
+            this.timeout = timeout;
+            this.keyExtractor = keyExtractor;
+        }
+
+        private static OverflowPolicy modeDefault() {
+            return new OverflowPolicy(Kind.MODE_DEFAULT, 0, null);
+        }
+
+        // the published event is discarded
+        public static OverflowPolicy dropNewest() {
+            return new OverflowPolicy(Kind.DROP_NEWEST, 0, null);
+        }
+
+        // the oldest pending event is discarded to make room for the published one
+        public static OverflowPolicy dropOldest() {
+            return new OverflowPolicy(Kind.DROP_OLDEST, 0, null);
+        }
+
+        // the publisher waits up to timeout for room, the event is discarded on timeout or interruption
+        public static OverflowPolicy block(int timeout) {
+            if(timeout < 0)
+                throw new IllegalArgumentException();
+            return new OverflowPolicy(Kind.BLOCK, timeout, null);
+        }
+
+        // only the latest pending event of each key is kept, maxPending bounds the distinct keys pending
+        public static <E> OverflowPolicy conflate(Function<? super E, ?> keyExtractor) {
+            if(keyExtractor == null)
+                throw new IllegalArgumentException();
+            //only applied to the events of the subscribed type
+            @SuppressWarnings("unchecked")
+            Function<Object, Object> extractor = (Function<Object, Object>) keyExtractor;
+            return new OverflowPolicy(Kind.CONFLATE, 0, extractor);
+        }
+
+        // events discarded or replaced by a newer one of the same key
+        public long getDroppedCount() {
+            return droppedCounter.sum();
+        }
+    }
+
+    private class Subscriber<E> {
+        //one of them is null
+        final Class<?> subscriptionType;
+        private final String subscriptionTopic;
+        private final OverflowPolicy overflowPolicy;
+        //null accepts all the events
+        private final Predicate<Object> filter;
+        //holds the events, or their keys when conflating, not used in shared ring mode
+        final BoundedRingBuffer<Object> eventsBuffer =
+                deliveryMode == DeliveryMode.SUBSCRIBER_BUFFERS ? new BoundedRingBuffer<>(maxPending) : null;
+        //reads the shared ring of the subscribed type, set on registration in shared ring mode
+        SharedEventRing.Cursor cursor;
+        //the last values cached for the type, handled before the buffer, set on registration and then only
+        // used by the thread handling the events
+        ArrayDeque<Object> cachedEvents;
+        private final ConcurrentHashMap<Object, Object> latestByKey;
+        //the subscribing thread, only unparked when it is waiting on an empty buffer
+        private final Thread thread = Thread.currentThread();
+        private volatile boolean waiting = false;
+
+        //only used by publishers blocked on a full buffer
+        private final Lock bufferLock = new ReentrantLock();
+        private final Condition waitSpace = bufferLock.newCondition();
+        private final AtomicInteger blockedPublishers = new AtomicInteger(0);
+        final AtomicBoolean ended = new AtomicBoolean(false);
+
+        //statistics
+        private final long id = subscriberIds.incrementAndGet();
+        private final LongAdder deliveredCounter = new LongAdder();
+        private final LongAdder droppedCounter = new LongAdder();
+        private final LatencyHistogram handlerTime = new LatencyHistogram();
+
+        //the filter is only applied to the events of the subscription
+        @SuppressWarnings("unchecked")
+        private Subscriber(Class<?> eventType, String topic, Predicate<? super E> filter, OverflowPolicy policy) {
+            subscriptionType = eventType;
+            subscriptionTopic = topic;
+            this.filter = (Predicate<Object>) filter;
+            overflowPolicy = policy;
+            latestByKey = policy.kind == OverflowPolicy.Kind.CONFLATE ? new ConcurrentHashMap<>() : null;
+        }
+
+        void deliver(Object message, long sequence) {
+            if(accepts(message))
+                addEvent(message);
+        }
+
+        void addEvent(Object message) {
+            boolean added;
+            switch (overflowPolicy.kind) {
+                case DROP_OLDEST:
+                    added = addDroppingOldest(message);
+                    break;
+                case BLOCK:
+                    added = addBlocking(message);
+                    break;
+                case CONFLATE:
+                    added = addConflating(message);
+                    break;
+                default:
+                    added = eventsBuffer.offer(message);
+                    if(!added)
+                        dropped();
             }
+            if(added)
+                wake();
         }
 
-        private void addToAllSubscribers(E message) {
+        private boolean addDroppingOldest(Object message) {
+            while (!eventsBuffer.offer(message)) {
+                if(pollEvent() != null)
+                    dropped();
+            }
+            return true;
+        }
+
+        private boolean addBlocking(Object message) {
+            //fast path
+            if(eventsBuffer.offer(message))
+                return true;
+
+            if(Timeouts.noWait(overflowPolicy.timeout) || ended.get()) {
+                dropped();
+                return false;
+            }
+
+            //wait to have space, counted before retrying so the subscriber can't miss it
+            long targetTime = Timeouts.start(overflowPolicy.timeout);
+            blockedPublishers.incrementAndGet();
+            //a publisher of the pool is blocked, the pool may compensate it
+            boolean managed = ManagedBlocking.begin();
             try {
-                lock.lock();
-                subscribers.forEach(s -> s.addEvent(message));
+                bufferLock.lock();
+                while (true) {
+                    if(eventsBuffer.offer(message))
+                        return true;
+
+                    long remaining = Timeouts.remaining(targetTime);
+                    if(Timeouts.isTimeout(remaining) || ended.get()) {
+                        dropped();
+                        return false;
+                    }
+
+                    try {
+                        waitSpace.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped();
+                        return false;
+                    }
+                }
             } finally {
-                lock.unlock();
+                bufferLock.unlock();
+                ManagedBlocking.end(managed);
+                blockedPublishers.decrementAndGet();
+            }
+        }
+
+        private boolean addConflating(Object message) {
+            Object key = overflowPolicy.keyExtractor.apply(message);
+            if(latestByKey.put(key, message) != null) {
+                //replaced a pending event, its key is already in the buffer
+                dropped();
+                return false;
+            }
+            if(eventsBuffer.offer(key))
+                return true;
+
+            //too many keys pending
+            if(latestByKey.remove(key) != null)
+                dropped();
+            return false;
+        }
+
+        void handled(int events, long start) {
+            handlerTime.record(System.nanoTime() - start);
+            deliveredCounter.add(events);
+        }
+
+        private void dropped() {
+            overflowPolicy.droppedCounter.increment();
+            droppedCounter.increment();
+        }
+
+        private EventBusStats.SubscriberStats getStats() {
+            long bufferDepth = cursor != null ? cursor.pending() : eventsBuffer.size();
+            return new EventBusStats.SubscriberStats(id, deliveredCounter.sum(), droppedCounter.sum(), bufferDepth,
+                    handlerTime.snapshot());
+        }
+
+        // must be called inside the registry's compute
+        void attach(SharedEventRing.Cursor cursor) {
+            this.cursor = cursor;
+            //the handler runs on the subscribing thread
+            cursor.reader = thread;
+        }
+
+        // must be called inside the registry's compute
+        void detach() {
+            cursor.ring().removeCursor(cursor);
+        }
+
+        boolean hasEvents() {
+            if(cachedEvents != null && !cachedEvents.isEmpty())
+                return true;
+            return cursor != null ? cursor.hasEvents() : !eventsBuffer.isEmpty();
+        }
+
+        boolean accepts(Object message) {
+            return filter == null || filter.test(message);
+        }
+
+        //the events are of the subscribed type or published to the subscribed topic
+        @SuppressWarnings("unchecked")
+        E nextEvent() {
+            return (E) pollEvent();
+        }
+
+        // null if there are no events
+        Object pollEvent() {
+            if(cachedEvents != null) {
+                Object event;
+                while ((event = cachedEvents.poll()) != null) {
+                    if(accepts(event))
+                        return event;
+                }
+                cachedEvents = null;
             }
+
+            if(cursor != null) {
+                Object event;
+                //the shared ring has the events of all subscribers, skip the filtered ones
+                while ((event = cursor.poll()) != null && !accepts(event));
+                return event;
+            }
+
+            Object event = eventsBuffer.poll();
+            if(event == null)
+                return null;
+
+            if(latestByKey != null)
+                event = latestByKey.remove(event);
+
+            if(blockedPublishers.get() > 0)
+                signalSpace();
+            return event;
         }
 
-        private void removeSubscriber(Subscriber subscriber) {
+        private void signalSpace() {
             try {
-                lock.lock();
-                subscribers.remove(subscriber);
+                bufferLock.lock();
+                waitSpace.signal();
             } finally {
-                lock.unlock();
+                bufferLock.unlock();
+            }
+        }
+
+        // returns null when the bus is shutdown and there are no more events
+        E getEvent() throws InterruptedException {
+            return getEvent(false, 0);
+        }
+
+        // also returns null on timeout
+        private E getEvent(long timeout) throws InterruptedException {
+            return getEvent(true, Timeouts.start(timeout));
+        }
+
+        private E getEvent(boolean timed, long targetTime) throws InterruptedException {
+            //fast path
+            E event = nextEvent();
+            if(event != null)
+                return event;
+
+            //wait to have events
+            while (true) {
+                //set before checking the buffer, a publisher that adds after the check sees it and unparks
+                waiting = true;
+                if(cursor != null)
+                    cursor.ring().idleSubscribers.incrementAndGet();
+                try {
+                    event = nextEvent();
+                    if(event != null)
+                        return event;
+
+                    //the events published before shutdown saw no publishes in progress are in the buffer
+                    if(isFinished())
+                        return null;
+
+                    if(Thread.interrupted())
+                        throw new InterruptedException();
+
+                    if(!timed)
+                        LockSupport.park(this);
+                    else {
+                        long remaining = Timeouts.remaining(targetTime);
+                        if(Timeouts.isTimeout(remaining))
+                            return null;
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
+                    }
+                } finally {
+                    waiting = false;
+                    if(cursor != null)
+                        cursor.ring().idleSubscribers.decrementAndGet();
+                }
             }
         }
 
-        private void addSubscriber(Subscriber<E> subscriber) {
+        // adds the events available without waiting until the batch has maxBatchSize
+        private void drainTo(List<E> batch, int maxBatchSize) {
+            while (batch.size() < maxBatchSize) {
+                E event = nextEvent();
+                if(event == null)
+                    return;
+                batch.add(event);
+            }
+        }
+
+        void wake() {
+            if(waiting)
+                LockSupport.unpark(thread);
+        }
+
+        // returns false if it had already ended
+        // publishers blocked on the buffer stop waiting for a subscriber that won't take events anymore
+        boolean ended() {
+            if(!ended.compareAndSet(false, true))
+                return false;
             try {
-                lock.lock();
-                subscribers.add(subscriber);
+                bufferLock.lock();
+                waitSpace.signalAll();
             } finally {
-                lock.unlock();
+                bufferLock.unlock();
             }
+            return true;
+        }
+
+        boolean isFinished() {
+            return publishesEnded && !hasEvents();
         }
     }
 
-    private class Subscriber<E> {
-        private final Class subscriptionType;
-        private LinkedList<E> eventsBuffer = new LinkedList<>();
+    /**
+     * Subscriber without a thread of its own, whoever finds it idle with events pending hands a drain to the pool.
+     * The scheduled flag guarantees a single drain at a time, so events are handled in order.
+     */
+    private class AsyncSubscriber<E> extends Subscriber<E> implements Runnable {
+        private static final int MAX_EVENTS_PER_RUN = 64;
+
         private final Consumer<E> handler;
+        private final SimpleThreadPoolExecutor pool;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        //events the handler can still receive, Long.MAX_VALUE is unbounded, only the drain decrements it
+        private final AtomicLong demand;
+        //null if nothing is done after the last event
+        private final Runnable onShutdown;
+        //null if nothing is done when the pool rejects the drain
+        private final Consumer<? super RejectedExecutionException> onRejected;
 
-        private Subscriber(Consumer<E> h, Class eventType) {
-            handler = h;
-            subscriptionType = eventType;
+        private AsyncSubscriber(Class<?> eventType, String topic, Predicate<? super E> filter, OverflowPolicy policy,
+                                Consumer<E> handler, SimpleThreadPoolExecutor pool, long demand, Runnable onShutdown) {
+            this(eventType, topic, filter, policy, handler, pool, demand, onShutdown, null);
+        }
+
+        private AsyncSubscriber(Class<?> eventType, String topic, Predicate<? super E> filter, OverflowPolicy policy,
+                                Consumer<E> handler, SimpleThreadPoolExecutor pool, long demand, Runnable onShutdown,
+                                Consumer<? super RejectedExecutionException> onRejected) {
+            super(eventType, topic, filter, policy);
+            this.handler = handler;
+            this.pool = pool;
+            this.demand = new AtomicLong(demand);
+            this.onShutdown = onShutdown;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        void wake() {
+            //without demand only the shutdown may end the subscription, request() wakes it again
+            if(demand.get() == 0 && !shuttingDown)
+                return;
+            if(claimDrain())
+                schedule();
         }
 
-        private void processEvent(Object event) {
-            handler.accept((E) event);
+        void request(long n) {
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            wake();
         }
 
-        private void addEvent(E message) {
+        private boolean canDrain() {
+            return demand.get() > 0 && hasEvents();
+        }
+
+        //in shared ring mode, an idle async subscriber is counted so publishers wake it
+        @Override
+        void attach(SharedEventRing.Cursor cursor) {
+            super.attach(cursor);
+            //the handler runs on the worker of each drain, set while it runs
+            cursor.reader = null;
+            cursor.ring().idleSubscribers.incrementAndGet();
+        }
+
+        @Override
+        void detach() {
+            //claimed for good, the subscription has ended
+            claimDrain();
+            super.detach();
+        }
+
+        private boolean claimDrain() {
+            if(scheduled.get() || !scheduled.compareAndSet(false, true))
+                return false;
+            if(cursor != null)
+                cursor.ring().idleSubscribers.decrementAndGet();
+            return true;
+        }
+
+        private void releaseDrain() {
+            if(cursor != null)
+                cursor.ring().idleSubscribers.incrementAndGet();
+            scheduled.set(false);
+        }
+
+        private void schedule() {
+            //queued in the pool if no worker is free, the publisher never waits for one
             try {
-                lock.lock();
-                if (eventsBuffer.size() < maxPending)
-                    eventsBuffer.add(message);
-            }finally {
-                lock.unlock();
+                pool.enqueue(this);
+            } catch (RejectedExecutionException e) {
+                //the pool is shutdown, nothing will handle the events
+                if(removeSubscriber(this) && onRejected != null)
+                    onRejected.accept(e);
             }
         }
 
-        private E getEvent() {
+        // false if the pool is shutdown, the calling worker keeps the drain
+        private boolean reschedule() {
             try {
-                lock.lock();
-                return eventsBuffer.poll();
-            } finally {
-                lock.unlock();
+                pool.enqueue(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
             }
         }
 
-        private boolean hasEventsInBuffer() {
-            try {
-                lock.lock();
-                return !eventsBuffer.isEmpty();
-            } finally {
-                lock.unlock();
+        @Override
+        public void run() {
+            while (true) {
+                for (int i = 0; i < MAX_EVENTS_PER_RUN && !ended.get() && demand.get() > 0; i++) {
+                    E event = nextEvent();
+                    if(event == null)
+                        break;
+                    if(demand.get() != Long.MAX_VALUE)
+                        demand.decrementAndGet();
+
+                    long start = System.nanoTime();
+                    if(cursor != null)
+                        cursor.reader = Thread.currentThread();
+                    try {
+                        handler.accept(event);
+                    } catch (RuntimeException | Error e) {
+                        pool.handleException(this, e);
+                    } finally {
+                        if(cursor != null)
+                            cursor.reader = null;
+                    }
+                    handled(1, start);
+                }
+
+                if(ended.get())
+                    return;
+
+                //still holding the flag, so only this drain ends the subscription
+                if(isFinished()) {
+                    removeSubscriber(this);
+                    if(onShutdown != null)
+                        onShutdown.run();
+                    return;
+                }
+
+                //give the pool thread to others, the drain goes on after the work already queued
+                if(canDrain()) {
+                    if(reschedule())
+                        return;
+                    continue;
+                }
+
+                //a publisher that adds after the flag is cleared sees it and schedules a new drain
+                releaseDrain();
+                if(!canDrain() && !isFinished())
+                    return;
+                if(!claimDrain())
+                    return;
+            }
+        }
+    }
+
+    // the latest event of a type, or of each key of the type
+    private static class LastValueCache {
+        private static final Object SINGLE_KEY = new Object();
+
+        //null keeps a single event
+        private final Function<Object, Object> keyExtractor;
+        private final ConcurrentHashMap<Object, Object> values = new ConcurrentHashMap<>();
+
+        private LastValueCache(Function<Object, Object> keyExtractor) {
+            this.keyExtractor = keyExtractor;
+        }
+
+        private void put(Object event) {
+            values.put(keyExtractor == null ? SINGLE_KEY : keyExtractor.apply(event), event);
+        }
+    }
+
+    private static class Sequenced {
+        private final Object event;
+        private final long sequence;
+
+        private Sequenced(Object event, long sequence) {
+            this.event = event;
+            this.sequence = sequence;
+        }
+    }
+
+    // reads the events from the journal, in sequence order and without a buffer to overflow,
+    // publishes only wake it after appending
+    private class JournalSubscriber extends Subscriber<Sequenced> {
+        //only used by the subscribing thread
+        private final EventJournal<?>.Reader reader;
+        private Sequenced next;
+
+        private JournalSubscriber(Class<?> eventType, EventJournal<?>.Reader reader) {
+            super(eventType, null, null, OverflowPolicy.dropNewest());
+            this.reader = reader;
+        }
+
+        @Override
+        void deliver(Object message, long sequence) {
+            wake();
+        }
+
+        @Override
+        boolean hasEvents() {
+            return peekEvent() != null;
+        }
+
+        @Override
+        Object pollEvent() {
+            Sequenced event = peekEvent();
+            next = null;
+            return event;
+        }
+
+        private Sequenced peekEvent() {
+            if(next == null) {
+                Object event = reader.poll();
+                if(event != null)
+                    next = new Sequenced(event, reader.nextSequence() - 1);
             }
+            return next;
+        }
+    }
+
+    public final class Subscription {
+        private final AsyncSubscriber<?> subscriber;
+
+        private Subscription(AsyncSubscriber<?> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        // more events the handler can receive, subscriptions other than subscribeEventOnDemand() have no limit
+        public void request(long n) {
+            if(n <= 0)
+                throw new IllegalArgumentException();
+            subscriber.request(n);
+        }
+
+        // the pending events are discarded, an event being handled still completes
+        public void unsubscribe() {
+            removeSubscriber(subscriber);
+        }
+
+        public boolean isActive() {
+            return !subscriber.ended.get();
+        }
+    }
+
+    private class StatsMBean implements EventBusStatsMXBean {
+        @Override
+        public long getPublishedCount() {
+            return publishedCounter.sum();
+        }
+
+        @Override
+        public int getSubscriptionsCount() {
+            return subscriptionsCounter.get();
+        }
+
+        @Override
+        public long getDeliveredCount() {
+            return getEventTypes().stream().mapToLong(EventBusStats.EventTypeStats::getDeliveredCount).sum();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return getEventTypes().stream().mapToLong(EventBusStats.EventTypeStats::getDroppedCount).sum();
+        }
+
+        @Override
+        public long getBufferDepth() {
+            return getEventTypes().stream().mapToLong(EventBusStats.EventTypeStats::getBufferDepth).sum();
+        }
+
+        @Override
+        public List<EventBusStats.EventTypeStats> getEventTypes() {
+            return getStats().getEventTypes();
         }
     }
 }
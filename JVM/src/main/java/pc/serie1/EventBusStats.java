@@ -0,0 +1,109 @@
+package pc.serie1;
+
+import pc.utils.LatencyHistogram;
+
+import java.util.List;
+
+public class EventBusStats {
+    private final long publishedCount;
+    private final int subscriptionsCount;
+    private final List<EventTypeStats> eventTypes;
+
+    EventBusStats(long publishedCount, int subscriptionsCount, List<EventTypeStats> eventTypes) {
+        this.publishedCount = publishedCount;
+        this.subscriptionsCount = subscriptionsCount;
+        this.eventTypes = eventTypes;
+    }
+
+    // events accepted by publishEvent(), with or without subscribers
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public int getSubscriptionsCount() {
+        return subscriptionsCount;
+    }
+
+    // one for each subscribed type
+    public List<EventTypeStats> getEventTypes() {
+        return eventTypes;
+    }
+
+    public static class EventTypeStats {
+        private final String eventType;
+        private final long publishedCount;
+        private final List<SubscriberStats> subscribers;
+
+        EventTypeStats(String eventType, long publishedCount, List<SubscriberStats> subscribers) {
+            this.eventType = eventType;
+            this.publishedCount = publishedCount;
+            this.subscribers = subscribers;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        // events of this type or of its subtypes, since the type has subscribers
+        public long getPublishedCount() {
+            return publishedCount;
+        }
+
+        // the sums below are of the current subscribers
+        public long getDeliveredCount() {
+            return subscribers.stream().mapToLong(SubscriberStats::getDeliveredCount).sum();
+        }
+
+        public long getDroppedCount() {
+            return subscribers.stream().mapToLong(SubscriberStats::getDroppedCount).sum();
+        }
+
+        public long getBufferDepth() {
+            return subscribers.stream().mapToLong(SubscriberStats::getBufferDepth).sum();
+        }
+
+        public List<SubscriberStats> getSubscribers() {
+            return subscribers;
+        }
+    }
+
+    public static class SubscriberStats {
+        private final long id;
+        private final long deliveredCount, droppedCount, bufferDepth;
+        private final LatencyHistogram.Snapshot handlerTime;
+
+        SubscriberStats(long id, long deliveredCount, long droppedCount, long bufferDepth,
+                        LatencyHistogram.Snapshot handlerTime) {
+            this.id = id;
+            this.deliveredCount = deliveredCount;
+            this.droppedCount = droppedCount;
+            this.bufferDepth = bufferDepth;
+            this.handlerTime = handlerTime;
+        }
+
+        // unique in the bus, in subscription order
+        public long getId() {
+            return id;
+        }
+
+        // events handed to the handler
+        public long getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        // events discarded by the overflow policy
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        // events pending in the buffer, or behind in the shared ring
+        public long getBufferDepth() {
+            return bufferDepth;
+        }
+
+        // each handler call, a batch handler is one call
+        public LatencyHistogram.Snapshot getHandlerTimeNanos() {
+            return handlerTime;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pc.serie1;
+
+import java.util.List;
+
+// JMX view of EventBusStats, handler times are in nanoseconds like the ones of ThreadPoolStatsMXBean
+public interface EventBusStatsMXBean {
+    long getPublishedCount();
+    int getSubscriptionsCount();
+    long getDeliveredCount();
+    long getDroppedCount();
+    long getBufferDepth();
+    List<EventBusStats.EventTypeStats> getEventTypes();
+}
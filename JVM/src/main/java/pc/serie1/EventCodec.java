@@ -0,0 +1,72 @@
+package pc.serie1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts events to bytes and back, used to keep events outside the heap (journal, shared memory).
+ * Encoding writes directly to the target buffer, so no intermediate copies are needed.
+ */
+public interface EventCodec<E> {
+
+    // writes the event from the buffer position, throws BufferOverflowException if it doesn't fit
+    void encode(E event, ByteBuffer buffer);
+
+    // reads an event from the buffer position up to its limit
+    E decode(ByteBuffer buffer);
+
+    static EventCodec<String> utf8() {
+        return new EventCodec<String>() {
+            @Override
+            public void encode(String event, ByteBuffer buffer) {
+                buffer.put(event.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    // Java serialization, works for any Serializable event but is the slowest
+    static <E extends Serializable> EventCodec<E> serializing() {
+        return new EventCodec<E>() {
+            @Override
+            public void encode(E event, ByteBuffer buffer) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(event);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                buffer.put(bytes.toByteArray());
+            }
+
+            @Override
+            public E decode(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    //only events of this codec are decoded with it
+                    @SuppressWarnings("unchecked")
+                    E event = (E) in.readObject();
+                    return event;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
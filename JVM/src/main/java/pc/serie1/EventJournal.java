@@ -0,0 +1,357 @@
+package pc.serie1;
+
+import pc.utils.MappedBuffers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append only log of events in memory mapped segment files of a directory, each event gets the next sequence number.
+ * Segments are named after their first sequence, a journal opened on a directory with segments continues after
+ * their last event. Readers don't lock and read from the mapped segments, so catching up runs at memory/disk speed.
+ * Retention is applied when a segment fills up: the oldest segments are deleted while their events are older than
+ * maxAge or the segments take more than maxBytes, the segment being written is always kept.
+ * Deleted segments are unmapped first, readers hold a read lock while they access a mapped segment and move to the
+ * oldest segment kept when theirs was deleted.
+ */
+public class EventJournal<E> implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".segment";
+    //record length, sequence and timestamp, the length is written last so a record without it isn't complete
+    private static final int HEADER_SIZE = 4 + 8 + 8;
+    private static final int SEQUENCE_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 12;
+
+    private final Path directory;
+    private final EventCodec<E> codec;
+    private final int segmentSize;
+    private final long maxAge;
+    private final long maxBytes;
+
+    //by first sequence
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    //serializes appends
+    private final Lock lock = new ReentrantLock();
+    private Segment active;
+    private int position;
+    private boolean closed = false;
+
+    //read by whoever accesses a mapped segment, written to unmap them
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+
+    //the events before it are complete, readers don't go past it
+    private volatile long committed;
+
+    private static class Segment {
+        private final long firstSequence;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private volatile long lastTimestamp;
+        //guarded by mappingLock
+        private boolean unmapped = false;
+
+        private Segment(long firstSequence, Path file, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    // without retention
+    public EventJournal(Path directory, EventCodec<E> codec, int segmentSize) throws IOException {
+        this(directory, codec, segmentSize, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    // maxAge in milliseconds since the last event of a segment was appended, maxBytes of all the segment files
+    public EventJournal(Path directory, EventCodec<E> codec, int segmentSize, long maxAge, long maxBytes)
+            throws IOException {
+        if(directory == null || codec == null || segmentSize <= HEADER_SIZE || maxAge <= 0 || maxBytes <= 0)
+            throw new IllegalArgumentException();
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.maxAge = maxAge;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        //names have a fixed width, so they sort by first sequence
+        Collections.sort(files);
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(firstSequence, file, map(file, 0));
+            segments.put(firstSequence, segment);
+
+            //the last complete record ends the segment
+            long sequence = firstSequence;
+            int offset = 0;
+            int length;
+            while ((length = recordLength(segment.buffer, offset)) > 0) {
+                segment.lastTimestamp = segment.buffer.getLong(offset + TIMESTAMP_OFFSET);
+                sequence = segment.buffer.getLong(offset + SEQUENCE_OFFSET) + 1;
+                offset += length;
+            }
+            active = segment;
+            position = offset;
+            committed = sequence;
+        }
+
+        if(active == null)
+            active = newSegment(0);
+    }
+
+    // the length of the complete record at offset, 0 if there is none
+    private static int recordLength(ByteBuffer buffer, int offset) {
+        if(offset + HEADER_SIZE > buffer.capacity())
+            return 0;
+        int length = buffer.getInt(offset);
+        return length >= HEADER_SIZE && offset + length <= buffer.capacity() ? length : 0;
+    }
+
+    private MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            //the mapping stays valid after closing the channel
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size > 0 ? size : channel.size());
+        }
+    }
+
+    private Segment newSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(firstSequence, file, map(file, segmentSize));
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    /**
+     * Returns the sequence of the event, readers see it after returning.
+     * Throws IllegalArgumentException if the encoded event doesn't fit in a segment.
+     */
+    public long append(E event) {
+        try {
+            lock.lock();
+            if(closed)
+                throw new IllegalStateException();
+
+            long sequence = committed;
+            int length = write(event, sequence, active.buffer, position);
+            if(length == 0) {
+                roll(sequence);
+                length = write(event, sequence, active.buffer, position);
+                if(length == 0)
+                    throw new IllegalArgumentException("event larger than a segment");
+            }
+            position += length;
+            committed = sequence + 1;
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // returns the record length, 0 if it doesn't fit
+    private int write(E event, long sequence, MappedByteBuffer segmentBuffer, int offset) {
+        if(offset + HEADER_SIZE > segmentBuffer.capacity())
+            return 0;
+
+        ByteBuffer buffer = segmentBuffer.duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        try {
+            codec.encode(event, buffer);
+        } catch (BufferOverflowException e) {
+            return 0;
+        }
+
+        int length = buffer.position() - offset;
+        long timestamp = System.currentTimeMillis();
+        segmentBuffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+        segmentBuffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        segmentBuffer.putInt(offset, length);
+        active.lastTimestamp = timestamp;
+        return length;
+    }
+
+    private void roll(long firstSequence) {
+        try {
+            active = newSegment(firstSequence);
+            position = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        applyRetention();
+    }
+
+    // doesn't fail the append that filled the segment
+    private void applyRetention() {
+        long now = System.currentTimeMillis();
+        long bytes = 0;
+        for (Segment segment : segments.values())
+            bytes += segment.buffer.capacity();
+
+        for (Segment segment : segments.values()) {
+            if(segment == active || (bytes <= maxBytes && now - segment.lastTimestamp <= maxAge))
+                return;
+            segments.remove(segment.firstSequence);
+            unmap(segment);
+            bytes -= segment.buffer.capacity();
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                //left on disk, the retention of a journal opened on the directory deletes it
+            }
+        }
+    }
+
+    // the segment must be unreachable for new readers
+    private void unmap(Segment segment) {
+        try {
+            mappingLock.writeLock().lock();
+            segment.unmapped = true;
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+        //no reader accesses it anymore
+        MappedBuffers.unmap(segment.buffer);
+    }
+
+    // sequence of the oldest event kept
+    public long firstSequence() {
+        return segments.firstKey();
+    }
+
+    // sequence of the next event appended
+    public long nextSequence() {
+        return committed;
+    }
+
+    /**
+     * Reads the events from fromSequence, or from the oldest event kept if it was already deleted.
+     * A reader is used by a single thread.
+     */
+    public Reader reader(long fromSequence) {
+        if(fromSequence < 0)
+            throw new IllegalArgumentException();
+        return new Reader(fromSequence);
+    }
+
+    // writes the mapped segments to disk, the events appended after it are lost if the machine crashes
+    public void flush() {
+        try {
+            mappingLock.readLock().lock();
+            for (Segment segment : segments.values()) {
+                if(!segment.unmapped)
+                    segment.buffer.force();
+            }
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+    }
+
+    // the events are kept, a new journal on the same directory continues after them, readers end
+    @Override
+    public void close() {
+        try {
+            lock.lock();
+            if(closed)
+                return;
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        flush();
+        for (Segment segment : segments.values())
+            unmap(segment);
+    }
+
+    public final class Reader {
+        private final long fromSequence;
+        private Segment segment;
+        private int offset = 0;
+        private long sequence;
+
+        private Reader(long fromSequence) {
+            this.fromSequence = fromSequence;
+            Map.Entry<Long, Segment> entry = segments.floorEntry(fromSequence);
+            segment = entry != null ? entry.getValue() : segments.firstEntry().getValue();
+            sequence = segment.firstSequence;
+        }
+
+        // null if all the appended events were read or the journal is closed
+        public E poll() {
+            try {
+                mappingLock.readLock().lock();
+                return pollMapped();
+            } finally {
+                mappingLock.readLock().unlock();
+            }
+        }
+
+        private E pollMapped() {
+            while (sequence < committed) {
+                if(segment.unmapped) {
+                    //deleted by retention, or the journal was closed
+                    Map.Entry<Long, Segment> first = segments.firstEntry();
+                    if(first.getValue().unmapped)
+                        return null;
+                    segment = first.getValue();
+                    offset = 0;
+                    sequence = segment.firstSequence;
+                    continue;
+                }
+
+                int length = recordLength(segment.buffer, offset);
+                if(length == 0) {
+                    //the event is in the next segment
+                    Map.Entry<Long, Segment> next = segments.higherEntry(segment.firstSequence);
+                    if(next == null)
+                        return null;
+                    //if this reader was too slow, retention may have deleted the segments in between
+                    segment = next.getValue();
+                    offset = 0;
+                    sequence = segment.firstSequence;
+                    continue;
+                }
+
+                ByteBuffer payload = segment.buffer.duplicate();
+                payload.limit(offset + length);
+                payload.position(offset + HEADER_SIZE);
+                offset += length;
+                sequence++;
+                if(sequence > fromSequence)
+                    return codec.decode(payload);
+            }
+            return null;
+        }
+
+        // sequence of the next event to read
+        public long nextSequence() {
+            return Math.max(sequence, fromSequence);
+        }
+    }
+}
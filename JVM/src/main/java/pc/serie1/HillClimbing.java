@@ -0,0 +1,77 @@
+package pc.serie1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hill climbing on completed work per second, in the spirit of the .NET thread pool.
+ * Every sample interval the throughput is compared with the one of the previous interval:
+ *  - if it improved more than the noise tolerance the target keeps moving in the same direction;
+ *  - if it got worse more than the noise tolerance the direction is reversed;
+ *  - otherwise the extra threads bought nothing and the target moves towards fewer threads.
+ * Intervals where the pool had no queued work don't tell anything about the pool size and are discarded.
+ * Not thread safe, SimpleThreadPoolExecutor calls it with its lock held.
+ */
+class HillClimbing {
+    private static final double NOISE_TOLERANCE = 0.05;
+
+    private final int minSize, maxSize;
+    private final long sampleInterval;
+    private int target;
+    private int direction = 1;
+    private double lastThroughput = -1;
+    private long sampleStartTime, sampleStartCompleted;
+    private boolean saturated = false;
+
+    HillClimbing(int minSize, int maxSize, int sampleInterval, long now, long completed) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.sampleInterval = TimeUnit.MILLISECONDS.toNanos(sampleInterval);
+        this.target = minSize;
+        this.sampleStartTime = now;
+        this.sampleStartCompleted = completed;
+    }
+
+    int target() {
+        return target;
+    }
+
+    // called when work had to wait because the pool was at its target
+    void saturated() {
+        saturated = true;
+    }
+
+    // returns true if the target changed
+    boolean update(long now, long completed) {
+        long elapsed = now - sampleStartTime;
+        if(elapsed < sampleInterval)
+            return false;
+
+        double throughput = (completed - sampleStartCompleted) / (elapsed / 1e9);
+        boolean wasSaturated = saturated;
+        sampleStartTime = now;
+        sampleStartCompleted = completed;
+        saturated = false;
+
+        if(!wasSaturated) {
+            lastThroughput = -1;
+            return false;
+        }
+
+        if(lastThroughput >= 0) {
+            if(throughput < lastThroughput * (1 - NOISE_TOLERANCE))
+                direction = -direction;
+            else if(throughput <= lastThroughput * (1 + NOISE_TOLERANCE))
+                direction = -1;
+        }
+        lastThroughput = throughput;
+
+        int newTarget = Math.max(minSize, Math.min(maxSize, target + direction));
+        if(newTarget == target) {
+            //bounced on a bound, explore the other way next time
+            direction = -direction;
+            return false;
+        }
+        target = newTarget;
+        return true;
+    }
+}
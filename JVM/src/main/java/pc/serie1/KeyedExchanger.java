@@ -1,5 +1,6 @@
 package pc.serie1;
 
+import pc.utils.ManagedBlocking;
 import pc.utils.Timeouts;
 import java.util.HashMap;
 import java.util.Map;
@@ -33,21 +34,29 @@ public class KeyedExchanger<T> {
     private final Map<Integer, DataHolder> keysMap = new HashMap<>();
 
     public Optional<T> exchange(int ky, T mydata, int timeout) throws InterruptedException {
+        boolean managed = false;
         try {
             mon.lock();
             DataHolder holder = keysMap.get(ky);
 
             //fast path
-            if(holder != null) {
-                Optional<T> ret = holder.setAndGet(mydata);
-                holder.cond.signal();
-                keysMap.remove(ky);
-                return ret;
-            }
+            if(holder != null)
+                return exchangeWith(ky, holder, mydata);
 
             if (Timeouts.noWait(timeout))
                 return Optional.empty();
 
+            //the pool is told without holding mon, it takes its own lock and may start a worker
+            mon.unlock();
+            try {
+                managed = ManagedBlocking.begin();
+            } finally {
+                mon.lock();
+            }
+            holder = keysMap.get(ky);
+            if(holder != null)
+                return exchangeWith(ky, holder, mydata);
+
             //wait to exchange
             long targetTime = Timeouts.start(timeout);
             long remaining = Timeouts.remaining(targetTime);
@@ -74,6 +83,15 @@ public class KeyedExchanger<T> {
             }
         } finally {
             mon.unlock();
+            ManagedBlocking.end(managed);
         }
     }
+
+    // must be called with mon held
+    private Optional<T> exchangeWith(int ky, DataHolder holder, T mydata) {
+        Optional<T> ret = holder.setAndGet(mydata);
+        holder.cond.signal();
+        keysMap.remove(ky);
+        return ret;
+    }
 }
@@ -0,0 +1,116 @@
+package pc.serie1;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the commands of the same key one at a time, in submission order, and commands of
+ * different keys in parallel on a SimpleThreadPoolExecutor.
+ * Each active key has a lock free queue and a counter of pending commands, whoever moves the
+ * counter from 0 to 1 hands a drain of the queue to the pool, so consecutive commands of a key
+ * pass from one to the next without locks and no thread is tied to a key.
+ * Drains are queued in the pool without waiting for a worker, so submitters never block on a saturated pool,
+ * and a drain queues itself again after MAX_COMMANDS_PER_RUN commands, so a busy key doesn't hold a worker.
+ * Command exceptions go to the exception handler of the pool.
+ */
+public class KeyedSerialExecutor<K> {
+    private static final int DEAD = -1;
+    private static final int MAX_COMMANDS_PER_RUN = 64;
+
+    private final SimpleThreadPoolExecutor pool;
+    private final ConcurrentHashMap<K, SerialQueue> queues = new ConcurrentHashMap<>();
+
+    public KeyedSerialExecutor(SimpleThreadPoolExecutor pool) {
+        this.pool = pool;
+    }
+
+    public void execute(K key, Runnable command) {
+        while (true) {
+            SerialQueue queue = queues.computeIfAbsent(key, SerialQueue::new);
+            //added before it's counted, so a drain always finds the commands it counts
+            queue.commands.add(command);
+            int pending;
+            do {
+                pending = queue.pending.get();
+            } while (pending != DEAD && !queue.pending.compareAndSet(pending, pending + 1));
+
+            if(pending == DEAD) {
+                //the queue went idle and is being removed, take the command back, help and retry with a new one
+                queue.commands.remove(command);
+                queues.remove(key, queue);
+                continue;
+            }
+            if(pending == 0)
+                queue.scheduleDrain();
+            return;
+        }
+    }
+
+    public int getActiveKeysCount() {
+        return queues.size();
+    }
+
+    private class SerialQueue implements Runnable {
+        private final K key;
+        private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger(0);
+
+        private SerialQueue(K key) {
+            this.key = key;
+        }
+
+        private void scheduleDrain() {
+            try {
+                pool.enqueue(this);
+            } catch (RejectedExecutionException e) {
+                //the pool is shutdown, the queue is discarded so the key isn't left marked as running,
+                //commands added meanwhile are discarded with it, like the ones queued in the pool
+                pending.set(DEAD);
+                queues.remove(key, this);
+                throw e;
+            }
+        }
+
+        // false if the pool is shutdown, the calling worker keeps the drain
+        private boolean reschedule() {
+            try {
+                pool.enqueue(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            int executed = 0;
+            while (true) {
+                //never null, the commands are added before they're counted
+                Runnable command = commands.poll();
+
+                try {
+                    command.run();
+                } catch (RuntimeException | Error e) {
+                    pool.handleException(command, e);
+                }
+
+                if(pending.decrementAndGet() == 0) {
+                    //a command added and not counted yet is counted from 0 by its submitter, which schedules a
+                    // new drain, so the queue is only removed when it's empty
+                    if(commands.isEmpty() && pending.compareAndSet(0, DEAD))
+                        queues.remove(key, this);
+                    return;
+                }
+
+                //the remaining commands wait behind the work already queued in the pool
+                if(++executed == MAX_COMMANDS_PER_RUN) {
+                    if(reschedule())
+                        return;
+                    executed = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package pc.serie1;
+
+import pc.utils.ManagedBlocking;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Divide and conquer work for SimpleThreadPoolExecutor, in the style of RecursiveTask.
+ * fork() from a pool worker keeps the work in the worker's deque and offers it to an idle worker.
+ * join() runs the work itself when nobody started it yet, and while it's running elsewhere the
+ * joiner executes other forked work instead of parking, so recursion doesn't hold pool threads.
+ * Outside a pool fork() does nothing and join() computes the work in the calling thread.
+ */
+public abstract class RecursiveWork<V> {
+    private static final int NEW = 0, RUNNING = 1, DONE = 2;
+
+    private final AtomicInteger status = new AtomicInteger(NEW);
+    private final AtomicReference<ConcurrentLinkedQueue<Thread>> waiters = new AtomicReference<>();
+    private V result;
+    private Throwable exception;
+
+    protected abstract V compute();
+
+    public final RecursiveWork<V> fork() {
+        SimpleThreadPoolExecutor.fork(this);
+        return this;
+    }
+
+    public final V join() {
+        if(tryExec())
+            SimpleThreadPoolExecutor.forgetForked(this);
+
+        //help with pending forked work while it's executed elsewhere
+        while (!isDone()) {
+            RecursiveWork<?> work = SimpleThreadPoolExecutor.pollForkedWork();
+            if(work == null)
+                break;
+            work.tryExec();
+        }
+
+        return awaitResult();
+    }
+
+    // waits for the work to be executed by someone else
+    final V awaitResult() {
+        if(!isDone())
+            awaitDone();
+        return getResult();
+    }
+
+    public final V invoke() {
+        tryExec();
+        return join();
+    }
+
+    public static void invokeAll(RecursiveWork<?> first, RecursiveWork<?> second) {
+        second.fork();
+        first.invoke();
+        second.join();
+    }
+
+    public final boolean isDone() {
+        return status.get() == DONE;
+    }
+
+    final boolean isStarted() {
+        return status.get() != NEW;
+    }
+
+    // executes the work if nobody started it yet, returns true if it was executed by this call
+    final boolean tryExec() {
+        if(!status.compareAndSet(NEW, RUNNING))
+            return false;
+        try {
+            result = compute();
+        } catch (RuntimeException | Error e) {
+            exception = e;
+        }
+        status.set(DONE);
+
+        ConcurrentLinkedQueue<Thread> threads = waiters.get();
+        if(threads != null)
+            threads.forEach(LockSupport::unpark);
+        return true;
+    }
+
+    private void awaitDone() {
+        waiters.compareAndSet(null, new ConcurrentLinkedQueue<>());
+        ConcurrentLinkedQueue<Thread> threads = waiters.get();
+        Thread th = Thread.currentThread();
+        threads.add(th);
+
+        boolean interrupted = false;
+        //the joiner is blocked, the pool may compensate it
+        boolean managed = ManagedBlocking.begin();
+        try {
+            while (!isDone()) {
+                LockSupport.park(this);
+                if(Thread.interrupted())
+                    interrupted = true;
+            }
+        } finally {
+            ManagedBlocking.end(managed);
+            threads.remove(th);
+        }
+        if(interrupted)
+            th.interrupt();
+    }
+
+    private V getResult() {
+        if(exception instanceof RuntimeException)
+            throw (RuntimeException) exception;
+        if(exception instanceof Error)
+            throw (Error) exception;
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+package pc.serie1;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring shared by the subscribers of an event type (Disruptor style).
+ * Each event is written once and every subscriber reads it through its own cursor, so the cost of a publish
+ * doesn't depend on the number of subscribers. A publisher only claims a sequence after the slowest cursor
+ * has read the event that was in its slot.
+ */
+class SharedEventRing {
+    private static final int GATING_SPINS = 100;
+    private static final long GATING_PARK_NANOS = 50_000;
+
+    private final Object[] events;
+    //sequence of the event in each slot, set after writing the event
+    private final AtomicLongArray published;
+    private final int capacity;
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    //copied on write, changes are serialized by the event bus registry
+    private volatile Cursor[] cursors = new Cursor[0];
+
+    //subscribers that may be waiting for events, publishers only wake the subscribers when there are some
+    final AtomicInteger idleSubscribers = new AtomicInteger(0);
+
+    SharedEventRing(int capacity) {
+        this.capacity = capacity;
+        events = new Object[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            published.set(i, -1);
+    }
+
+    // Returns null once the event is written, or the cursor the publisher stopped waiting for without writing it:
+    // one read by the publishing thread itself, which can't advance while it waits, or any if it's interrupted.
+    Cursor publish(Object event) {
+        Thread thread = Thread.currentThread();
+        int spins = 0;
+        while (true) {
+            //the sequence is claimed once the slowest cursor has read the event in its slot,
+            // so a publisher that gives up leaves no gap
+            long sequence = nextSequence.get();
+            Cursor gating = gatingCursor(sequence - capacity, thread);
+            if(gating == null) {
+                if(!nextSequence.compareAndSet(sequence, sequence + 1))
+                    continue;
+                int index = (int) (sequence % capacity);
+                events[index] = event;
+                published.set(index, sequence);
+                return null;
+            }
+
+            if(gating.reader == thread || thread.isInterrupted())
+                return gating;
+            if(spins++ < GATING_SPINS)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(this, GATING_PARK_NANOS);
+        }
+    }
+
+    // a cursor that hasn't read the sequence yet, the one read by the thread if there's one
+    private Cursor gatingCursor(long sequence, Thread thread) {
+        Cursor gating = null;
+        for (Cursor cursor : cursors) {
+            if(cursor.sequence <= sequence) {
+                if(cursor.reader == thread)
+                    return cursor;
+                gating = cursor;
+            }
+        }
+        return gating;
+    }
+
+    // must be called inside the registry's compute
+    // the cursor starts at the events published after it
+    Cursor addCursor() {
+        Cursor cursor = new Cursor(nextSequence.get());
+        Cursor[] current = cursors;
+        Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = cursor;
+        cursors = updated;
+
+        //publishers that claim from here on see the cursor, the ones before may overwrite the older slots
+        cursor.sequence = nextSequence.get();
+        return cursor;
+    }
+
+    // must be called inside the registry's compute
+    void removeCursor(Cursor cursor) {
+        Cursor[] current = cursors;
+        Cursor[] updated = new Cursor[current.length - 1];
+        int i = 0;
+        for (Cursor c : current) {
+            if(c != cursor)
+                updated[i++] = c;
+        }
+        cursors = updated;
+    }
+
+    // used by a single subscriber
+    class Cursor {
+        //next sequence to read, the slots before it can be overwritten
+        private volatile long sequence;
+        //the thread handling the events read, null if none is
+        volatile Thread reader;
+
+        private Cursor(long sequence) {
+            this.sequence = sequence;
+        }
+
+        // null if the next event isn't published yet
+        Object poll() {
+            long current = sequence;
+            int index = (int) (current % capacity);
+            if(published.get(index) != current)
+                return null;
+
+            Object event = events[index];
+            sequence = current + 1;
+            return event;
+        }
+
+        boolean hasEvents() {
+            long current = sequence;
+            return published.get((int) (current % capacity)) == current;
+        }
+
+        // events claimed by publishers and not read yet
+        long pending() {
+            return Math.max(0, nextSequence.get() - sequence);
+        }
+
+        SharedEventRing ring() {
+            return SharedEventRing.this;
+        }
+    }
+}
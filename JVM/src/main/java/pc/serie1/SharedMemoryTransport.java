@@ -0,0 +1,263 @@
+package pc.serie1;
+
+import pc.utils.Fences;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bridges the events of a type between the EventBus of processes on the same host through a ring of slots in a
+ * memory mapped file. One process exports the type, its events are encoded directly into the mapped slots, and
+ * any number of processes import them, publishing them on their own bus.
+ * The exporter never waits for the importers, an importer more than capacity events behind loses the overwritten
+ * ones, they are counted by getLostCount().
+ */
+public class SharedMemoryTransport<E> implements AutoCloseable {
+    private static final int MAGIC = 0x45564253;
+    private static final int HEADER_SIZE = 128;
+    //sequence of the next event, in its own cache line
+    private static final int PUBLISHED_OFFSET = 64;
+    //sequence of the event in the slot, -1 while it is written, and the payload length
+    private static final int SLOT_HEADER_SIZE = 8 + 4;
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final EventCodec<E> codec;
+    private final int capacity;
+    private final int slotSize;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    //the file lock makes this the only exporter of the file, writes hold the lock so close() waits for them
+    private final Lock lock = new ReentrantLock();
+    private FileLock exportLock;
+    private EventBus.Subscription exportSubscription;
+    private volatile boolean exporting = false;
+    private boolean closed = false;
+
+    private final LongAdder lostCounter = new LongAdder();
+
+    // the file is created if needed, the processes using it must agree on capacity and slotSize
+    public SharedMemoryTransport(Path file, EventCodec<E> codec, int capacity, int slotSize) throws IOException {
+        if(file == null || codec == null || capacity <= 0 || slotSize <= SLOT_HEADER_SIZE || slotSize % 8 != 0
+                || (long) capacity * slotSize > Integer.MAX_VALUE - HEADER_SIZE)
+            throw new IllegalArgumentException();
+        this.codec = codec;
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * slotSize);
+            if(buffer.getInt(0) == 0) {
+                buffer.putInt(4, capacity);
+                buffer.putInt(8, slotSize);
+                Fences.releaseFence();
+                buffer.putInt(0, MAGIC);
+            }
+            else if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != capacity || buffer.getInt(8) != slotSize)
+                throw new IllegalArgumentException("the file has a different ring");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes to the ring the events of the type published on the bus, the pool encodes them.
+     * Throws IllegalStateException if the file is already exported, by this or another process.
+     * The file stays exported until close().
+     */
+    public EventBus.Subscription export(EventBus bus, Class<?> eventType, SimpleThreadPoolExecutor pool)
+            throws IOException {
+        try {
+            lock.lock();
+            if(closed)
+                throw new IllegalStateException("closed");
+            if(exportLock != null)
+                throw new IllegalStateException("already exported");
+            try {
+                exportLock = channel.tryLock(0, 1, false);
+            } catch (OverlappingFileLockException e) {
+                //locked by another transport of this process
+            }
+            if(exportLock == null)
+                throw new IllegalStateException("exported by another process");
+            exporting = true;
+
+            //a subscription drains one event at a time, so there is a single writer
+            Consumer<E> handler = this::write;
+            exportSubscription = bus.subscribeEventAsync(handler, eventType, pool);
+            return exportSubscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(E event) {
+        try {
+            lock.lock();
+            //a drain may still handle an event after close() unsubscribed it
+            if(!closed)
+                writeSlot(event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeSlot(E event) {
+        long sequence = buffer.getLong(PUBLISHED_OFFSET);
+        int slot = slotOffset(sequence);
+
+        //readers of the previous event in the slot see it is being overwritten before the payload changes
+        buffer.putLong(slot, -1);
+        Fences.releaseFence();
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(slot + slotSize);
+        payload.position(slot + SLOT_HEADER_SIZE);
+        try {
+            codec.encode(event, payload);
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("event larger than a slot");
+        }
+        buffer.putInt(slot + 8, payload.position() - slot - SLOT_HEADER_SIZE);
+        Fences.releaseFence();
+        buffer.putLong(slot, sequence);
+        Fences.releaseFence();
+        buffer.putLong(PUBLISHED_OFFSET, sequence + 1);
+    }
+
+    private int slotOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % capacity) * slotSize;
+    }
+
+    /**
+     * Publishes on the bus the events written to the ring from now on.
+     * Like subscribeEvent() it blocks until the bus is shutdown or the calling thread is interrupted.
+     * Throws IllegalStateException if this transport exports the file, the events would be published again.
+     */
+    public void importTo(EventBus bus) throws InterruptedException {
+        if(exporting)
+            throw new IllegalStateException();
+
+        Reader reader = new Reader();
+        int idle = 0;
+        while (!bus.isShuttingDown()) {
+            E event = reader.poll();
+            if(event != null) {
+                idle = 0;
+                try {
+                    bus.publishEvent(event);
+                } catch (IllegalStateException e) {
+                    //shutdown
+                    return;
+                }
+                continue;
+            }
+
+            //the exporter can't signal other processes
+            if(Thread.interrupted())
+                throw new InterruptedException();
+            if(idle++ < IDLE_SPINS)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    // events overwritten before being imported
+    public long getLostCount() {
+        return lostCounter.sum();
+    }
+
+    // stops exporting, the events not written yet are discarded
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.lock();
+            if(closed)
+                return;
+            closed = true;
+            //the write in progress, if any, ended before the lock was acquired
+            if(exportSubscription != null)
+                exportSubscription.unsubscribe();
+            if(exportLock != null)
+                exportLock.release();
+        } finally {
+            lock.unlock();
+        }
+        //the mapping stays valid for the importers of this process until they stop
+        channel.close();
+    }
+
+    // used by a single thread
+    private class Reader {
+        //copied before decoding, the exporter may overwrite the slot meanwhile
+        private final ByteBuffer copy = ByteBuffer.allocate(slotSize);
+        private long sequence;
+
+        private Reader() {
+            sequence = buffer.getLong(PUBLISHED_OFFSET);
+        }
+
+        // null if there are no new events
+        private E poll() {
+            while (true) {
+                long published = buffer.getLong(PUBLISHED_OFFSET);
+                Fences.acquireFence();
+                if(sequence >= published)
+                    return null;
+                if(published - sequence > capacity) {
+                    lapped(published);
+                    continue;
+                }
+
+                int slot = slotOffset(sequence);
+                long before = buffer.getLong(slot);
+                Fences.acquireFence();
+                int length = buffer.getInt(slot + 8);
+                if(before != sequence || length < 0 || length > slotSize - SLOT_HEADER_SIZE) {
+                    lapped(buffer.getLong(PUBLISHED_OFFSET));
+                    continue;
+                }
+
+                ByteBuffer payload = buffer.duplicate();
+                payload.limit(slot + SLOT_HEADER_SIZE + length);
+                payload.position(slot + SLOT_HEADER_SIZE);
+                copy.clear();
+                copy.put(payload);
+                Fences.acquireFence();
+
+                //overwritten while copying
+                if(buffer.getLong(slot) != sequence) {
+                    lapped(buffer.getLong(PUBLISHED_OFFSET));
+                    continue;
+                }
+
+                sequence++;
+                copy.flip();
+                return codec.decode(copy);
+            }
+        }
+
+        // skips to the oldest event the exporter won't overwrite soon
+        private void lapped(long published) {
+            long next = Math.max(sequence + 1, published - capacity + 1);
+            lostCounter.add(next - sequence);
+            sequence = next;
+        }
+    }
+}
@@ -1,29 +1,65 @@
 package pc.serie1;
 
+import pc.utils.LatencyHistogram;
+import pc.utils.ManagedBlocking;
 import pc.utils.Timeouts;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 public class SimpleThreadPoolExecutor {
+    // most queued work a worker takes per lock acquisition
+    private static final int MAX_WORK_PER_FETCH = 16;
 
     private final Lock lock = new ReentrantLock();
     private final Condition waitTermination = lock.newCondition();
 
     private final LinkedList<WorkUnit> workToExecute = new LinkedList<>();
     private final LinkedList<WorkerThread> workersWaiting = new LinkedList<>();
+    //all workers, traversed without lock when stealing forked work
+    private final CopyOnWriteArrayList<WorkerThread> workers = new CopyOnWriteArrayList<>();
 
-    private final int maxPoolSize, keepAliveTime;
+    private final int corePoolSize, maxPoolSize, keepAliveTime;
+    private int maxCompensationThreads;
     private boolean shuttingDown = false;
+    private boolean allowCoreThreadTimeOut = false;
+    //when not null, the pool grows up to the target found by hill climbing instead of maxPoolSize
+    private HillClimbing hillClimbing = null;
     private int workersCounter = 0;
     private int workPendingCounter = 0;
+    //workers blocked in a library primitive, each one lets the pool go one worker over its target
+    private int blockedWorkersCounter = 0;
+
+    //statistics, counters are guarded by lock
+    private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private int largestPoolSize = 0;
+    private long submittedCount = 0, completedCount = 0, failedCount = 0, timedOutCount = 0, rejectedCount = 0, createdThreadCount = 0;
+
+    private volatile BiConsumer<Runnable, Throwable> exceptionHandler = null;
 
     public SimpleThreadPoolExecutor(int maxPoolSize, int keepAliveTime) {
+        this(0, maxPoolSize, keepAliveTime);
+    }
+
+    public SimpleThreadPoolExecutor(int corePoolSize, int maxPoolSize, int keepAliveTime) {
+        if(corePoolSize < 0 || maxPoolSize <= 0 || corePoolSize > maxPoolSize || keepAliveTime < 0)
+            throw new IllegalArgumentException();
+        this.corePoolSize = corePoolSize;
         this.maxPoolSize = maxPoolSize;
         this.keepAliveTime = keepAliveTime;
+        this.maxCompensationThreads = maxPoolSize;
     }
 
     public boolean execute(Runnable command, int timeout) throws InterruptedException {
@@ -31,66 +67,280 @@ public class SimpleThreadPoolExecutor {
             lock.lock();
 
             //fast path
-            if(shuttingDown)
+            if(shuttingDown) {
+                rejectedCount++;
                 throw new RejectedExecutionException();
-
-            if(!workersWaiting.isEmpty()) {
-                WorkerThread worker = workersWaiting.pollFirst();
-                WorkUnit work = new WorkUnit(command);
-                worker.startWorkAndSignal(work);
-                workPendingCounter++;
-                return true;
             }
 
-            if(workersCounter < maxPoolSize) {
-                WorkUnit work = new WorkUnit(command);
-                WorkerThread worker = new WorkerThread(work);
-                worker.start();
-                workersCounter++;
-                workPendingCounter++;
+            if(tryStartWork(command)) {
+                submittedCount++;
                 return true;
             }
 
-            if(Timeouts.noWait(timeout))
+            if(hillClimbing != null)
+                hillClimbing.saturated();
+
+            if(Timeouts.noWait(timeout)) {
+                timedOutCount++;
                 return false;
+            }
 
             //wait to execute
             long targetTime = Timeouts.start(timeout);
             long remaining = Timeouts.remaining(targetTime);
 
             WorkUnit work = new WorkUnit(command);
+            work.waitWorkerThread = lock.newCondition();
             workToExecute.add(work);
             workPendingCounter++;
-            while (true) {
-                try {
-                    work.waitWorkerThread.await(remaining, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                    if (work.isBeingExecuted)
+
+            boolean managed = blockIfOwnWorker();
+            try {
+                //the compensation worker may have taken it already
+                if (work.isBeingExecuted) {
+                    submittedCount++;
+                    return true;
+                }
+                while (true) {
+                    try {
+                        work.waitWorkerThread.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        if (work.isBeingExecuted) {
+                            submittedCount++;
+                            return true;
+                        }
+                        workToExecute.remove(work);
+                        workPendingCounter--;
+                        throw e;
+                    }
+
+                    if (work.isBeingExecuted) {
+                        submittedCount++;
                         return true;
-                    workToExecute.remove(work);
-                    workPendingCounter--;
-                    throw e;
+                    }
+
+                    remaining = Timeouts.remaining(targetTime);
+                    if (Timeouts.isTimeout(remaining)) {
+                        workToExecute.remove(work);
+                        workPendingCounter--;
+                        timedOutCount++;
+                        return false;
+                    }
                 }
+            } finally {
+                if(managed)
+                    blockedWorkersCounter--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                if (work.isBeingExecuted)
-                    return true;
+    // Delivers the commands under one lock acquisition, handing them to as many idle workers as
+    // needed and then to new workers. The rest wait in the queue as one batch with a single condition.
+    // Returns how many commands were delivered, in the order given, the others are not executed.
+    // If interrupted while waiting, the interrupt status is kept and the delivered count is returned.
+    public int executeAll(Collection<? extends Runnable> commands, int timeout) {
+        try {
+            lock.lock();
 
-                remaining = Timeouts.remaining(targetTime);
-                if (Timeouts.isTimeout(remaining)) {
-                    workToExecute.remove(work);
-                    workPendingCounter--;
-                    return false;
+            //fast path
+            if(shuttingDown) {
+                rejectedCount++;
+                throw new RejectedExecutionException();
+            }
+
+            Runnable[] work = commands.toArray(new Runnable[0]);
+            int started = 0;
+            while (started < work.length && tryStartWork(work[started]))
+                started++;
+            submittedCount += started;
+            if(started == work.length)
+                return started;
+
+            if(hillClimbing != null)
+                hillClimbing.saturated();
+
+            if(Timeouts.noWait(timeout)) {
+                timedOutCount += work.length - started;
+                return started;
+            }
+
+            //wait to execute
+            long targetTime = Timeouts.start(timeout);
+            long remaining = Timeouts.remaining(targetTime);
+
+            Batch batch = new Batch(work.length - started);
+            for (int i = started; i < work.length; i++) {
+                WorkUnit unit = new WorkUnit(work[i]);
+                unit.batch = batch;
+                workToExecute.add(unit);
+            }
+            workPendingCounter += batch.remaining;
+
+            boolean managed = blockIfOwnWorker();
+            try {
+                while (batch.remaining > 0) {
+                    try {
+                        batch.waitWorkerThreads.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+
+                    remaining = Timeouts.remaining(targetTime);
+                    if (Timeouts.isTimeout(remaining))
+                        break;
+                }
+
+                int withdrawn = 0;
+                if(batch.remaining > 0) {
+                    Iterator<WorkUnit> it = workToExecute.iterator();
+                    while (it.hasNext()) {
+                        WorkUnit unit = it.next();
+                        if(unit.batch == batch && !unit.isBeingExecuted) {
+                            it.remove();
+                            withdrawn++;
+                        }
+                    }
+                    workPendingCounter -= withdrawn;
+                    timedOutCount += withdrawn;
                 }
+                submittedCount += work.length - started - withdrawn;
+                return work.length - withdrawn;
+            } finally {
+                if(managed)
+                    blockedWorkersCounter--;
             }
         } finally {
             lock.unlock();
         }
     }
 
+    public boolean prestartCoreThread() {
+        try {
+            lock.lock();
+
+            if(shuttingDown || workersCounter >= corePoolSize)
+                return false;
+
+            addWorker(null);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int prestartAllCoreThreads() {
+        int started = 0;
+        while (prestartCoreThread())
+            started++;
+        return started;
+    }
+
+    public void allowCoreThreadTimeOut(boolean value) {
+        try {
+            lock.lock();
+            if(value && keepAliveTime == 0)
+                throw new IllegalArgumentException();
+            allowCoreThreadTimeOut = value;
+            //core workers waiting without timeout must re-evaluate their keep alive
+            if(value)
+                workersWaiting.forEach(w -> w.waitWork.signal());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enableAdaptiveSizing(int sampleInterval) {
+        if(sampleInterval <= 0)
+            throw new IllegalArgumentException();
+        try {
+            lock.lock();
+            hillClimbing = new HillClimbing(Math.max(corePoolSize, 1), maxPoolSize, sampleInterval,
+                    System.nanoTime(), completedCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void disableAdaptiveSizing() {
+        try {
+            lock.lock();
+            hillClimbing = null;
+            startWorkersForQueuedWork();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTargetPoolSize() {
+        try {
+            lock.lock();
+            return targetPoolSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Receives the work that threw and the exception, by default they go to the worker's uncaught exception handler
+    public void setExceptionHandler(BiConsumer<Runnable, Throwable> handler) {
+        exceptionHandler = handler;
+    }
+
+    // Hard cap on the workers started over the pool size to compensate for blocked workers
+    public void setMaxCompensationThreads(int maxCompensationThreads) {
+        if(maxCompensationThreads < 0)
+            throw new IllegalArgumentException();
+        try {
+            lock.lock();
+            this.maxCompensationThreads = maxCompensationThreads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public int getPoolSize() {
+        try {
+            lock.lock();
+            return workersCounter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <V> V invoke(RecursiveWork<V> work) throws InterruptedException {
+        execute(work::tryExec, Integer.MAX_VALUE);
+        return work.awaitResult();
+    }
+
+    public ThreadPoolStats getStats() {
+        try {
+            lock.lock();
+            return new ThreadPoolStats(workersCounter, workersWaiting.size(), blockedWorkersCounter, largestPoolSize, targetPoolSize(), workToExecute.size(),
+                    submittedCount, completedCount, failedCount, timedOutCount, rejectedCount, createdThreadCount,
+                    queueWaitTime.snapshot(), runTime.snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("pc.serie1:type=SimpleThreadPoolExecutor,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsMBean(), objectName);
+        return objectName;
+    }
+
     public void shutdown() {
         try {
             lock.lock();
             shuttingDown = true;
+            //idle core workers would otherwise wait forever
+            workersWaiting.forEach(w -> w.waitWork.signal());
         }finally {
             lock.unlock();
         }
@@ -132,38 +382,416 @@ public class SimpleThreadPoolExecutor {
         }
     }
 
+    // Starts the command or queues it, never waiting for a worker nor counting a timeout. For the executors built
+    // on the pool, each one queues at most one command per key or subscriber, so the queue stays bounded.
+    void enqueue(Runnable command) {
+        try {
+            lock.lock();
+
+            if(shuttingDown) {
+                rejectedCount++;
+                throw new RejectedExecutionException();
+            }
+
+            submittedCount++;
+            if(tryStartWork(command))
+                return;
+
+            if(hillClimbing != null)
+                hillClimbing.saturated();
+            workToExecute.add(new WorkUnit(command));
+            workPendingCounter++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // also used by the executors built on the pool for the commands they run inside their own work
+    void handleException(Runnable command, Throwable exception) {
+        BiConsumer<Runnable, Throwable> handler = exceptionHandler;
+        if(handler != null) {
+            try {
+                handler.accept(command, exception);
+                return;
+            } catch (RuntimeException | Error e) {
+                exception = e;
+            }
+        }
+        Thread th = Thread.currentThread();
+        th.getUncaughtExceptionHandler().uncaughtException(th, exception);
+    }
+
+    // Keeps work forked by a worker in its deque, for the joiner or for workers without work,
+    // and hands it to an idle worker right away if there's one.
+    static void fork(RecursiveWork<?> work) {
+        Thread th = Thread.currentThread();
+        if(!(th instanceof SimpleThreadPoolExecutor.WorkerThread))
+            return;
+        WorkerThread worker = (WorkerThread) th;
+        worker.forkedWork.push(work);
+        worker.pool().offerForked(work);
+    }
+
+    // work joined by the thread that forked it is on top of its deque
+    static void forgetForked(RecursiveWork<?> work) {
+        Thread th = Thread.currentThread();
+        if(th instanceof SimpleThreadPoolExecutor.WorkerThread) {
+            ConcurrentLinkedDeque<RecursiveWork<?>> forkedWork = ((WorkerThread) th).forkedWork;
+            if(forkedWork.peekFirst() == work)
+                forkedWork.pollFirst();
+        }
+    }
+
+    // Forked work not yet started, for a joiner to help with: the latest one forked by the calling
+    // worker or else the oldest one of another worker.
+    static RecursiveWork<?> pollForkedWork() {
+        Thread th = Thread.currentThread();
+        if(!(th instanceof SimpleThreadPoolExecutor.WorkerThread))
+            return null;
+        WorkerThread worker = (WorkerThread) th;
+        RecursiveWork<?> work;
+        while ((work = worker.forkedWork.pollFirst()) != null) {
+            if(!work.isStarted())
+                return work;
+        }
+        return worker.pool().stealForked();
+    }
+
+    private RecursiveWork<?> stealForked() {
+        for (WorkerThread worker : workers) {
+            RecursiveWork<?> work;
+            while ((work = worker.forkedWork.pollLast()) != null) {
+                if(!work.isStarted())
+                    return work;
+            }
+        }
+        return null;
+    }
+
+    // queued work another worker took in advance and hasn't started
+    private WorkUnit stealLocalWork() {
+        for (WorkerThread worker : workers) {
+            WorkUnit work = worker.localWork.pollLast();
+            if(work != null)
+                return work;
+        }
+        return null;
+    }
+
+    private void offerForked(RecursiveWork<?> work) {
+        try {
+            lock.lock();
+            tryStartWork(work::tryExec);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must be called with lock held
+    private boolean tryStartWork(Runnable command) {
+        if(!workersWaiting.isEmpty()) {
+            WorkerThread worker = workersWaiting.pollFirst();
+            WorkUnit work = new WorkUnit(command);
+            worker.startWorkAndSignal(work);
+            workPendingCounter++;
+            return true;
+        }
+
+        if(workersCounter < capacity()) {
+            addWorker(new WorkUnit(command));
+            workPendingCounter++;
+            return true;
+        }
+        return false;
+    }
+
+    // must be called with lock held
+    private void addWorker(WorkUnit firstWork) {
+        WorkerThread worker = new WorkerThread(firstWork);
+        worker.start();
+        workers.add(worker);
+        workersCounter++;
+        createdThreadCount++;
+        if(workersCounter > largestPoolSize)
+            largestPoolSize = workersCounter;
+    }
+
+    // must be called with lock held
+    private int targetPoolSize() {
+        return hillClimbing == null ? maxPoolSize : hillClimbing.target();
+    }
+
+    // must be called with lock held
+    private int capacity() {
+        return targetPoolSize() + Math.min(blockedWorkersCounter, maxCompensationThreads);
+    }
+
+    // must be called with lock held
+    private void workerBlocked(WorkerThread worker) {
+        blockedWorkersCounter++;
+        worker.releaseLocalWork();
+        startWorkersForQueuedWork();
+    }
+
+    // A worker of this pool waiting for it would otherwise hold the worker it's waiting for.
+    // must be called with lock held
+    private boolean blockIfOwnWorker() {
+        Thread th = Thread.currentThread();
+        if(!(th instanceof SimpleThreadPoolExecutor.WorkerThread) || ((WorkerThread) th).pool() != this)
+            return false;
+        workerBlocked((WorkerThread) th);
+        return true;
+    }
+
+    // must be called with lock held
+    private void startWorkersForQueuedWork() {
+        while (workersCounter < capacity() && !workToExecute.isEmpty())
+            addWorker(takeQueuedWork());
+    }
+
+    // must be called with lock held
+    private WorkUnit takeQueuedWork() {
+        WorkUnit work = workToExecute.poll();
+        work.taken();
+        return work;
+    }
+
+    // must be called with lock held
+    private boolean canTimeOut() {
+        return allowCoreThreadTimeOut || workersCounter > corePoolSize;
+    }
+
     private class WorkUnit {
-        private Condition waitWorkerThread = lock.newCondition();
+        //only work waiting in workToExecute has a submitter to signal, alone or as part of a batch
+        private Condition waitWorkerThread;
+        private Batch batch;
         private Runnable work;
         private boolean isBeingExecuted = false;
+        private final long submitTime = System.nanoTime();
 
         private WorkUnit(Runnable w) {
             work = w;
         }
+
+        // must be called with lock held
+        private void taken() {
+            if(isBeingExecuted)
+                return;
+            isBeingExecuted = true;
+            if(batch != null) {
+                if(--batch.remaining == 0)
+                    batch.waitWorkerThreads.signal();
+            } else if(waitWorkerThread != null) {
+                waitWorkerThread.signal();
+            }
+        }
+    }
+
+    private class Batch {
+        private final Condition waitWorkerThreads = lock.newCondition();
+        private int remaining;
+
+        private Batch(int size) {
+            remaining = size;
+        }
     }
 
+    private class StatsMBean implements ThreadPoolStatsMXBean {
+        private long lastCreatedThreadCount = 0;
+        private long lastRateTime = System.nanoTime();
+
+        @Override
+        public int getPoolSize() {
+            return getStats().getPoolSize();
+        }
+
+        @Override
+        public int getActiveCount() {
+            return getStats().getActiveCount();
+        }
+
+        @Override
+        public int getIdleCount() {
+            return getStats().getIdleCount();
+        }
 
-    private class WorkerThread extends Thread {
+        @Override
+        public int getBlockedCount() {
+            return getStats().getBlockedCount();
+        }
+
+        @Override
+        public int getLargestPoolSize() {
+            return getStats().getLargestPoolSize();
+        }
+
+        @Override
+        public int getTargetPoolSize() {
+            return getStats().getTargetPoolSize();
+        }
+
+        @Override
+        public int getQueueSize() {
+            return getStats().getQueueSize();
+        }
+
+        @Override
+        public long getSubmittedCount() {
+            return getStats().getSubmittedCount();
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return getStats().getCompletedCount();
+        }
+
+        @Override
+        public long getFailedCount() {
+            return getStats().getFailedCount();
+        }
+
+        @Override
+        public long getTimedOutCount() {
+            return getStats().getTimedOutCount();
+        }
+
+        @Override
+        public long getRejectedCount() {
+            return getStats().getRejectedCount();
+        }
+
+        @Override
+        public long getCreatedThreadCount() {
+            return getStats().getCreatedThreadCount();
+        }
+
+        // threads created per second since the previous read
+        @Override
+        public synchronized double getThreadCreationRate() {
+            long created = getStats().getCreatedThreadCount();
+            long now = System.nanoTime();
+            double rate = (created - lastCreatedThreadCount) / ((now - lastRateTime) / 1e9);
+            lastCreatedThreadCount = created;
+            lastRateTime = now;
+            return rate;
+        }
+
+        @Override
+        public double getQueueWaitTimeMeanNanos() {
+            return queueWaitTime.snapshot().getMean();
+        }
+
+        @Override
+        public long getQueueWaitTime99thPercentileNanos() {
+            return queueWaitTime.snapshot().getPercentile(99);
+        }
+
+        @Override
+        public long getQueueWaitTimeMaxNanos() {
+            return queueWaitTime.snapshot().getMax();
+        }
+
+        @Override
+        public double getRunTimeMeanNanos() {
+            return runTime.snapshot().getMean();
+        }
+
+        @Override
+        public long getRunTime99thPercentileNanos() {
+            return runTime.snapshot().getPercentile(99);
+        }
+
+        @Override
+        public long getRunTimeMaxNanos() {
+            return runTime.snapshot().getMax();
+        }
+    }
+
+
+    private class WorkerThread extends Thread implements ManagedBlocking.CompensatedThread {
         private Condition waitWork = lock.newCondition();
         private WorkUnit workUnit;
+        //queued work taken in the same fetch, executed before fetching again, taken by the owner at the head
+        // and stolen at the tail by workers without work, so it doesn't wait behind a long task
+        private final ConcurrentLinkedDeque<WorkUnit> localWork = new ConcurrentLinkedDeque<>();
+        //completions not yet accounted, they are accounted in the next fetch to save a lock acquisition
+        private int completedUnits = 0, failedUnits = 0;
+        private long lastCompletionTime;
+        //pushed and popped by the owner at the head, stolen by other workers at the tail
+        private final ConcurrentLinkedDeque<RecursiveWork<?>> forkedWork = new ConcurrentLinkedDeque<>();
 
         private WorkerThread(WorkUnit work) {
             workUnit = work;
         }
 
+        private SimpleThreadPoolExecutor pool() {
+            return SimpleThreadPoolExecutor.this;
+        }
+
         @Override
-        public void run() {
-            do {
-                workUnit.work.run();
+        public void blocked() {
+            try {
+                lock.lock();
+                workerBlocked(this);
+            } finally {
+                lock.unlock();
+            }
+        }
 
+        @Override
+        public void unblocked() {
+            try {
+                lock.lock();
+                blockedWorkersCounter--;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            //prestarted core workers start without work
+            while (workUnit != null || (workUnit = localWork.poll()) != null || fetchWork()) {
+                long startTime = System.nanoTime();
+                queueWaitTime.record(startTime - workUnit.submitTime);
+                boolean failed = false;
                 try {
-                    lock.lock();
-                    workPendingCounter--;
-                    workUnit = null;
-                } finally {
-                    lock.unlock();
+                    workUnit.work.run();
+                } catch (RuntimeException | Error e) {
+                    //the worker survives, so failing work doesn't cost a new thread per execute
+                    failed = true;
+                    handleException(workUnit.work, e);
                 }
-            } while (fetchWork());
+                lastCompletionTime = System.nanoTime();
+                runTime.record(lastCompletionTime - startTime);
+
+                completedUnits++;
+                if(failed)
+                    failedUnits++;
+                workUnit = null;
+            }
+        }
+
+        // must be called with lock held
+        private void accountCompleted() {
+            if(completedUnits == 0)
+                return;
+            workPendingCounter -= completedUnits;
+            completedCount += completedUnits;
+            failedCount += failedUnits;
+            completedUnits = failedUnits = 0;
+            if(workPendingCounter == 0)
+                waitTermination.signalAll();
+            if(hillClimbing != null && hillClimbing.update(lastCompletionTime, completedCount))
+                startWorkersForQueuedWork();
+        }
+
+        // gives the work taken in advance back to the queue, for other workers to take
+        // must be called with lock held
+        private void releaseLocalWork() {
+            WorkUnit work;
+            while ((work = localWork.pollLast()) != null)
+                workToExecute.addFirst(work);
         }
 
         void startWorkAndSignal(WorkUnit work) {
@@ -179,52 +807,87 @@ public class SimpleThreadPoolExecutor {
         private boolean fetchWork() {
             try {
                 lock.lock();
+                accountCompleted();
+
+                //the target was lowered or blocked workers were released, retire the extra workers
+                if(workersCounter > capacity())
+                    return exit();
 
                 //fast path
                 if(!workToExecute.isEmpty()) {
-                    workUnit = workToExecute.poll();
-                    workUnit.isBeingExecuted = true;
-                    workUnit.waitWorkerThread.signal();
+                    workUnit = takeQueuedWork();
+                    //take a share of the queue, leaving the rest for the other workers
+                    int share = Math.min(MAX_WORK_PER_FETCH - 1, workToExecute.size() / workersCounter);
+                    for (int i = 0; i < share; i++)
+                        localWork.add(takeQueuedWork());
+                    return true;
+                }
+
+                WorkUnit stolenWork = stealLocalWork();
+                if(stolenWork != null) {
+                    workUnit = stolenWork;
+                    return true;
+                }
+
+                RecursiveWork<?> stolen = stealForked();
+                if(stolen != null) {
+                    workUnit = new WorkUnit(stolen::tryExec);
+                    workPendingCounter++;
                     return true;
                 }
 
                 if(shuttingDown) {
                     waitTermination.signal();
-                    return false;
+                    return exit();
                 }
 
-                if(Timeouts.noWait(keepAliveTime))
-                    return false;
+                if(Timeouts.noWait(keepAliveTime) && canTimeOut())
+                    return exit();
 
-                //wait to execute
+                //wait to execute, core workers wait until there's work or shutdown
                 long targetTime = Timeouts.start(keepAliveTime);
                 long remaining = Timeouts.remaining(targetTime);
 
                 workersWaiting.add(this);
                 while (true) {
                     try {
-                        waitWork.await(remaining, TimeUnit.MILLISECONDS);
+                        if(canTimeOut())
+                            waitWork.await(remaining, TimeUnit.MILLISECONDS);
+                        else
+                            waitWork.await();
                     } catch (InterruptedException e) {
                         //ignore exception
                         if (workUnit != null)
                             return true;
                         workersWaiting.remove(this);
-                        return false;
+                        return exit();
                     }
 
                     if (workUnit != null)
                         return true;
 
+                    if(shuttingDown) {
+                        workersWaiting.remove(this);
+                        return exit();
+                    }
+
                     remaining = Timeouts.remaining(targetTime);
-                    if (Timeouts.isTimeout(remaining)) {
+                    if (Timeouts.isTimeout(remaining) && canTimeOut()) {
                         workersWaiting.remove(this);
-                        return false;
+                        return exit();
                     }
                 }
             } finally {
                 lock.unlock();
             }
         }
+
+        // must be called with lock held
+        private boolean exit() {
+            workers.remove(this);
+            workersCounter--;
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,96 @@
+package pc.serie1;
+
+import pc.utils.LatencyHistogram;
+
+public class ThreadPoolStats {
+    private final int poolSize, activeCount, idleCount, blockedCount, largestPoolSize, targetPoolSize, queueSize;
+    private final long submittedCount, completedCount, failedCount, timedOutCount, rejectedCount, createdThreadCount;
+    private final LatencyHistogram.Snapshot queueWaitTime, runTime;
+
+    ThreadPoolStats(int poolSize, int idleCount, int blockedCount, int largestPoolSize, int targetPoolSize, int queueSize,
+                    long submittedCount, long completedCount, long failedCount, long timedOutCount, long rejectedCount,
+                    long createdThreadCount, LatencyHistogram.Snapshot queueWaitTime, LatencyHistogram.Snapshot runTime) {
+        this.poolSize = poolSize;
+        this.activeCount = poolSize - idleCount;
+        this.idleCount = idleCount;
+        this.blockedCount = blockedCount;
+        this.largestPoolSize = largestPoolSize;
+        this.targetPoolSize = targetPoolSize;
+        this.queueSize = queueSize;
+        this.submittedCount = submittedCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.timedOutCount = timedOutCount;
+        this.rejectedCount = rejectedCount;
+        this.createdThreadCount = createdThreadCount;
+        this.queueWaitTime = queueWaitTime;
+        this.runTime = runTime;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    // workers blocked in a library primitive, compensated by extra workers
+    public int getBlockedCount() {
+        return blockedCount;
+    }
+
+    public int getLargestPoolSize() {
+        return largestPoolSize;
+    }
+
+    // maxPoolSize, or the current target when adaptive sizing is enabled
+    public int getTargetPoolSize() {
+        return targetPoolSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    // completed work that threw an exception
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    // execute() calls that returned false because no worker took the work in time
+    public long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    // execute() calls that threw RejectedExecutionException
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getCreatedThreadCount() {
+        return createdThreadCount;
+    }
+
+    // time since execute() was called until a worker started running the work, in nanoseconds
+    public LatencyHistogram.Snapshot getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    // time a worker spent running the work, in nanoseconds
+    public LatencyHistogram.Snapshot getRunTime() {
+        return runTime;
+    }
+}
@@ -0,0 +1,25 @@
+package pc.serie1;
+
+// JMX view of ThreadPoolStats, times are in nanoseconds like the ones of EventBusStatsMXBean
+public interface ThreadPoolStatsMXBean {
+    int getPoolSize();
+    int getActiveCount();
+    int getIdleCount();
+    int getBlockedCount();
+    int getLargestPoolSize();
+    int getTargetPoolSize();
+    int getQueueSize();
+    long getSubmittedCount();
+    long getCompletedCount();
+    long getFailedCount();
+    long getTimedOutCount();
+    long getRejectedCount();
+    long getCreatedThreadCount();
+    double getThreadCreationRate();
+    double getQueueWaitTimeMeanNanos();
+    long getQueueWaitTime99thPercentileNanos();
+    long getQueueWaitTimeMaxNanos();
+    double getRunTimeMeanNanos();
+    long getRunTime99thPercentileNanos();
+    long getRunTimeMaxNanos();
+}
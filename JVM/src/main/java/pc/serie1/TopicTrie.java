@@ -0,0 +1,132 @@
+package pc.serie1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Index of topic patterns, levels are separated by '.', '*' matches one level and '#' the remaining levels
+ * (zero or more), so "orders.*.new" matches "orders.eu.new" and "orders.#" matches "orders" and "orders.eu.new".
+ * A topic is matched visiting at most the literal, '*' and '#' children of each level, independently of the
+ * number of patterns. Changes are serialized by a lock, matching doesn't lock.
+ */
+class TopicTrie<V> {
+    private static final String SINGLE_LEVEL = "*";
+    private static final String MULTI_LEVEL = "#";
+
+    private static class Node<V> {
+        private final ConcurrentHashMap<String, Node<V>> children = new ConcurrentHashMap<>();
+        private volatile V value;
+    }
+
+    private final Node<V> root = new Node<>();
+    private final Lock lock = new ReentrantLock();
+
+    static String[] patternLevels(String pattern) {
+        String[] levels = levels(pattern);
+        for (int i = 0; i < levels.length; i++) {
+            if(levels[i].equals(MULTI_LEVEL) && i != levels.length - 1)
+                throw new IllegalArgumentException("'#' must be the last level: " + pattern);
+            if(!isWildcard(levels[i]) && (levels[i].contains(SINGLE_LEVEL) || levels[i].contains(MULTI_LEVEL)))
+                throw new IllegalArgumentException("wildcards must be a whole level: " + pattern);
+        }
+        return levels;
+    }
+
+    static String[] topicLevels(String topic) {
+        String[] levels = levels(topic);
+        for (String level : levels) {
+            if(level.contains(SINGLE_LEVEL) || level.contains(MULTI_LEVEL))
+                throw new IllegalArgumentException("topics can't have wildcards: " + topic);
+        }
+        return levels;
+    }
+
+    private static String[] levels(String topic) {
+        if(topic == null)
+            throw new IllegalArgumentException();
+        String[] levels = topic.split("\\.", -1);
+        for (String level : levels) {
+            if(level.isEmpty())
+                throw new IllegalArgumentException("empty level: " + topic);
+        }
+        return levels;
+    }
+
+    private static boolean isWildcard(String level) {
+        return level.equals(SINGLE_LEVEL) || level.equals(MULTI_LEVEL);
+    }
+
+    // like Map.compute, a null value removes the pattern
+    V compute(String pattern, Function<V, V> remapping) {
+        String[] levels = patternLevels(pattern);
+        try {
+            lock.lock();
+            @SuppressWarnings("unchecked")
+            Node<V>[] path = (Node<V>[]) new Node<?>[levels.length + 1];
+            path[0] = root;
+            for (int i = 0; i < levels.length; i++)
+                path[i + 1] = path[i].children.computeIfAbsent(levels[i], l -> new Node<>());
+
+            Node<V> node = path[levels.length];
+            V value = remapping.apply(node.value);
+            node.value = value;
+
+            //prune the nodes left without patterns
+            for (int i = levels.length; i > 0 && path[i].value == null && path[i].children.isEmpty(); i--)
+                path[i - 1].children.remove(levels[i - 1]);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<V> values() {
+        List<V> values = new ArrayList<>();
+        collect(root, values);
+        return values;
+    }
+
+    private void collect(Node<V> node, List<V> values) {
+        V value = node.value;
+        if(value != null)
+            values.add(value);
+        for (Node<V> child : node.children.values())
+            collect(child, values);
+    }
+
+    // the values of all the patterns matching the topic
+    List<V> match(String topic) {
+        List<V> matching = new ArrayList<>();
+        match(root, topicLevels(topic), 0, matching);
+        return matching;
+    }
+
+    private void match(Node<V> node, String[] levels, int level, List<V> matching) {
+        //'#' also matches zero levels
+        Node<V> multiLevel = node.children.get(MULTI_LEVEL);
+        if(multiLevel != null) {
+            V value = multiLevel.value;
+            if(value != null)
+                matching.add(value);
+        }
+
+        if(level == levels.length) {
+            V value = node.value;
+            if(value != null)
+                matching.add(value);
+            return;
+        }
+
+        Node<V> literal = node.children.get(levels[level]);
+        if(literal != null)
+            match(literal, levels, level + 1, matching);
+
+        Node<V> singleLevel = node.children.get(SINGLE_LEVEL);
+        if(singleLevel != null)
+            match(singleLevel, levels, level + 1, matching);
+    }
+}
@@ -0,0 +1,186 @@
+package pc.serie1.eventLoop;
+
+import pc.utils.Timeouts;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of event loop threads, each consuming its own lock free MPSC inbox.
+ * Work submitted with the same key always runs in the same loop, so state of a session stays
+ * in one thread (and its core caches) and needs no synchronization.
+ * Work submitted without key from a loop stays in that loop, otherwise loops are used round robin.
+ * shutdown() and awaitTermination() follow the contract of SimpleThreadPoolExecutor.
+ */
+public class EventLoopExecutor {
+
+    private final EventLoop[] loops;
+    private final IdleStrategy idleStrategy;
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+    private volatile boolean shuttingDown = false;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition waitTermination = lock.newCondition();
+    private volatile int terminationWaiters = 0;
+
+    public EventLoopExecutor(IdleStrategy idleStrategy) {
+        this(Runtime.getRuntime().availableProcessors(), idleStrategy);
+    }
+
+    public EventLoopExecutor(int numOfLoops, IdleStrategy idleStrategy) {
+        if(numOfLoops <= 0)
+            throw new IllegalArgumentException();
+        this.idleStrategy = idleStrategy;
+        loops = new EventLoop[numOfLoops];
+        for (int i = 0; i < numOfLoops; i++)
+            loops[i] = new EventLoop(i);
+        for (EventLoop loop : loops)
+            loop.start();
+    }
+
+    public void execute(Runnable command) {
+        Thread th = Thread.currentThread();
+        if(th instanceof EventLoop && ((EventLoop) th).executor() == this)
+            ((EventLoop) th).submit(command);
+        else
+            loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].submit(command);
+    }
+
+    // work with equal keys runs in the same loop, in submission order for each producer
+    public void execute(Object key, Runnable command) {
+        loops[loopIndex(key)].submit(command);
+    }
+
+    public int loopIndex(Object key) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), loops.length);
+    }
+
+    public int getLoopsCount() {
+        return loops.length;
+    }
+
+    public void shutdown() {
+        shuttingDown = true;
+        for (EventLoop loop : loops)
+            LockSupport.unpark(loop);
+    }
+
+    public boolean awaitTermination(int timeout) throws InterruptedException {
+        //fast path
+        if(pendingWork() == 0)
+            return true;
+
+        if(Timeouts.noWait(timeout))
+            return false;
+
+        try {
+            lock.lock();
+            terminationWaiters++;
+
+            //wait work termination
+            long targetTime = Timeouts.start(timeout);
+            long remaining;
+            while (pendingWork() != 0) {
+                remaining = Timeouts.remaining(targetTime);
+                if (Timeouts.isTimeout(remaining))
+                    return false;
+                try {
+                    waitTermination.await(remaining, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    if (pendingWork() == 0)
+                        return true;
+                    throw e;
+                }
+            }
+            return true;
+        } finally {
+            terminationWaiters--;
+            lock.unlock();
+        }
+    }
+
+    private long pendingWork() {
+        long pending = 0;
+        for (EventLoop loop : loops)
+            pending += loop.submitted.get() - loop.completed;
+        return pending;
+    }
+
+    private void signalTermination() {
+        try {
+            lock.lock();
+            waitTermination.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class EventLoop extends Thread {
+        private final MpscInbox<Runnable> inbox = new MpscInbox<>();
+        //incremented before checking shuttingDown, so the loop never exits with work on its way
+        private final AtomicLong submitted = new AtomicLong(0);
+        //single writer
+        private volatile long completed = 0;
+        private volatile boolean sleeping = false;
+
+        private EventLoop(int index) {
+            super("event-loop-" + index);
+        }
+
+        private EventLoopExecutor executor() {
+            return EventLoopExecutor.this;
+        }
+
+        private void submit(Runnable command) {
+            submitted.incrementAndGet();
+            if(shuttingDown) {
+                submitted.decrementAndGet();
+                throw new RejectedExecutionException();
+            }
+            inbox.offer(command);
+            if(sleeping)
+                LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            int idleCount = 0;
+            while (true) {
+                Runnable command = inbox.poll();
+                if(command != null) {
+                    idleCount = 0;
+                    try {
+                        command.run();
+                    } catch (RuntimeException | Error e) {
+                        getUncaughtExceptionHandler().uncaughtException(this, e);
+                    }
+                    completed++;
+                    continue;
+                }
+
+                if(idleCount == 0 && terminationWaiters > 0)
+                    signalTermination();
+
+                if(shuttingDown && completed == submitted.get())
+                    return;
+
+                if(idleCount < Integer.MAX_VALUE)
+                    idleCount++;
+                if(idleStrategy.parks()) {
+                    sleeping = true;
+                    if(inbox.isEmpty() && !shuttingDown)
+                        idleStrategy.idle(idleCount);
+                    sleeping = false;
+                } else {
+                    idleStrategy.idle(idleCount);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pc.serie1.eventLoop;
+
+import java.util.concurrent.locks.LockSupport;
+
+// What an event loop does when its inbox is empty.
+// idleCount is the number of consecutive empty polls, it is reset when work arrives.
+public interface IdleStrategy {
+
+    void idle(int idleCount);
+
+    // strategies that park must be unparked by producers
+    default boolean parks() {
+        return false;
+    }
+
+    // lowest latency, burns a core while idle
+    static IdleStrategy busySpin() {
+        return idleCount -> { };
+    }
+
+    static IdleStrategy yielding() {
+        return idleCount -> Thread.yield();
+    }
+
+    // spins, then yields, then parks for exponentially longer periods up to maxParkNanos
+    static IdleStrategy backoff(int maxSpins, int maxYields, long maxParkNanos) {
+        return new IdleStrategy() {
+            @Override
+            public void idle(int idleCount) {
+                if(idleCount <= maxSpins)
+                    return;
+                if(idleCount <= maxSpins + maxYields) {
+                    Thread.yield();
+                    return;
+                }
+                int shift = Math.min(idleCount - maxSpins - maxYields, 30);
+                LockSupport.parkNanos(Math.min(1000L << shift, maxParkNanos));
+            }
+
+            @Override
+            public boolean parks() {
+                return true;
+            }
+        };
+    }
+
+    // parks until a producer delivers work, cheapest while idle but pays a wake up per burst
+    static IdleStrategy blocking() {
+        return new IdleStrategy() {
+            @Override
+            public void idle(int idleCount) {
+                LockSupport.park();
+            }
+
+            @Override
+            public boolean parks() {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package pc.serie1.eventLoop;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock free multi-producer single-consumer queue (Vyukov's).
+ * Producers only swap the tail, the consumer owns the head and never uses CAS.
+ */
+class MpscInbox<E> {
+    private static class Node<E> {
+        E item;
+        volatile Node<E> next;
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    private final AtomicReference<Node<E>> tail;
+    private Node<E> head;
+
+    MpscInbox() {
+        Node<E> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    void offer(E item) {
+        Node<E> node = new Node<>(item);
+        Node<E> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    // consumer only
+    E poll() {
+        Node<E> next = head.next;
+        if(next == null)
+            return null;
+        E item = next.item;
+        next.item = null;
+        head = next;
+        return item;
+    }
+
+    // consumer only, may report empty while a producer is linking its node
+    boolean isEmpty() {
+        return head.next == null;
+    }
+}
@@ -1,5 +1,6 @@
 package pc.serie1.messageQueue;
 
+import pc.utils.ManagedBlocking;
 import pc.utils.Timeouts;
 
 import java.util.LinkedList;
@@ -34,19 +35,27 @@ public class MessageQueue<T> {
     }
 
     public Optional<T> receive(int timeout) throws InterruptedException {
+        boolean managed = false;
         try {
             mon.lock();
 
             //fast path
-            if(!messages.isEmpty()) {
-                WaitingStatus mStatus = messages.poll();
-                mStatus.setAsSentAndSignal();
-                return Optional.of(mStatus.message);
-            }
+            if(!messages.isEmpty())
+                return receiveWaiting();
 
             if(Timeouts.noWait(timeout))
                 return Optional.empty();
 
+            //the pool is told without holding mon, it takes its own lock and may start a worker
+            mon.unlock();
+            try {
+                managed = ManagedBlocking.begin();
+            } finally {
+                mon.lock();
+            }
+            if(!messages.isEmpty())
+                return receiveWaiting();
+
             //wait to receive
             long targetTime = Timeouts.start(timeout);
             long remaining = Timeouts.remaining(targetTime);
@@ -74,9 +83,17 @@ public class MessageQueue<T> {
             }
         } finally {
             mon.unlock();
+            ManagedBlocking.end(managed);
         }
     }
 
+    // must be called with mon held
+    private Optional<T> receiveWaiting() {
+        WaitingStatus mStatus = messages.poll();
+        mStatus.setAsSentAndSignal();
+        return Optional.of(mStatus.message);
+    }
+
     class DeliveredStatus implements SendStatus {
         @Override
         public boolean isSent() {
@@ -145,6 +162,7 @@ public class MessageQueue<T> {
 
         @Override
         public boolean await(int timeout) throws InterruptedException {
+            boolean managed = false;
             try {
                 messageMon.lock();
 
@@ -155,6 +173,18 @@ public class MessageQueue<T> {
                 if(Timeouts.noWait(timeout) || canceled)
                     return false;
 
+                //the pool is told without holding messageMon, it takes its own lock and may start a worker
+                messageMon.unlock();
+                try {
+                    managed = ManagedBlocking.begin();
+                } finally {
+                    messageMon.lock();
+                }
+                if(isSent)
+                    return true;
+                if(canceled)
+                    return false;
+
                 //wait to deliver
                 long targetTime = Timeouts.start(timeout);
                 long remaining = Timeouts.remaining(targetTime);
@@ -176,6 +206,7 @@ public class MessageQueue<T> {
                 }
             } finally {
                 messageMon.unlock();
+                ManagedBlocking.end(managed);
             }
         }
     }
@@ -0,0 +1,7 @@
+package pc.serie1.scheduler;
+
+public interface ScheduledTask {
+    boolean cancel();
+    boolean isCancelled();
+    boolean isDone();
+}
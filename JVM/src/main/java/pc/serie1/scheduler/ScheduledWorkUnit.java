@@ -0,0 +1,70 @@
+package pc.serie1.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ScheduledWorkUnit implements ScheduledTask {
+    static final int WAITING = 0, DISPATCHED = 1, CANCELLED = 2, DONE = 3;
+
+    private final SimpleScheduledExecutor scheduler;
+    private final Runnable command;
+    // > 0 fixed rate, < 0 fixed delay, 0 one shot
+    private final long period;
+    final AtomicInteger state = new AtomicInteger(WAITING);
+    long deadline;
+
+    // owned by the ticker thread
+    long deadlineTick;
+    TimingWheel.Bucket bucket;
+    ScheduledWorkUnit prev, next;
+
+    ScheduledWorkUnit(SimpleScheduledExecutor scheduler, Runnable command, long deadline, long period) {
+        this.scheduler = scheduler;
+        this.command = command;
+        this.deadline = deadline;
+        this.period = period;
+    }
+
+    void run() {
+        try {
+            command.run();
+        } catch (RuntimeException | Error e) {
+            //like ScheduledThreadPoolExecutor, a failed periodic task is not rescheduled
+            state.compareAndSet(DISPATCHED, DONE);
+            throw e;
+        }
+
+        if(period == 0) {
+            state.compareAndSet(DISPATCHED, DONE);
+            return;
+        }
+
+        deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+        if(state.compareAndSet(DISPATCHED, WAITING))
+            scheduler.reschedule(this);
+    }
+
+    @Override
+    public boolean cancel() {
+        while (true) {
+            int s = state.get();
+            if(s == CANCELLED || s == DONE)
+                return false;
+            if(state.compareAndSet(s, CANCELLED)) {
+                if(s == WAITING)
+                    scheduler.cancelled(this);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        int s = state.get();
+        return s == CANCELLED || s == DONE;
+    }
+}
@@ -0,0 +1,173 @@
+package pc.serie1.scheduler;
+
+import pc.serie1.SimpleThreadPoolExecutor;
+import pc.utils.Timeouts;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delayed and periodic execution on top of a SimpleThreadPoolExecutor.
+ * Timers are kept in a TimingWheel owned by a single ticker thread, other threads only hand
+ * new and cancelled timers through lock free queues, so schedule and cancel are O(1).
+ * Due timers are executed in the pool, the ticker waits at most a tick for a saturated pool and retries
+ * the timers it couldn't deliver on the next tick, so the other timers keep expiring.
+ */
+public class SimpleScheduledExecutor {
+
+    private final SimpleThreadPoolExecutor pool;
+    private final long tickNanos;
+    private final int dispatchTimeout;
+    private final long startTime;
+    private final TimingWheel wheel = new TimingWheel();
+    private final ConcurrentLinkedQueue<ScheduledWorkUnit> newTimers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ScheduledWorkUnit> cancelledTimers = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private volatile boolean shuttingDown = false;
+    // owned by the ticker thread, set when the pool didn't accept a timer during the current tick
+    private boolean saturated = false;
+
+    public SimpleScheduledExecutor(SimpleThreadPoolExecutor pool, int tickDuration) {
+        if(tickDuration <= 0)
+            throw new IllegalArgumentException();
+        this.pool = pool;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.dispatchTimeout = tickDuration;
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::tick);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public ScheduledTask schedule(Runnable command, int delay) {
+        return add(command, delay, 0);
+    }
+
+    public ScheduledTask scheduleAtFixedRate(Runnable command, int initialDelay, int period) {
+        if(period <= 0)
+            throw new IllegalArgumentException();
+        return add(command, initialDelay, TimeUnit.MILLISECONDS.toNanos(period));
+    }
+
+    public ScheduledTask scheduleWithFixedDelay(Runnable command, int initialDelay, int delay) {
+        if(delay <= 0)
+            throw new IllegalArgumentException();
+        return add(command, initialDelay, -TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    // Pending timers are cancelled, work already delivered to the pool is not affected.
+    public void shutdown() {
+        shuttingDown = true;
+        ticker.interrupt();
+    }
+
+    public boolean awaitTermination(int timeout) throws InterruptedException {
+        if(Timeouts.noWait(timeout))
+            return !ticker.isAlive();
+        ticker.join(timeout);
+        return !ticker.isAlive();
+    }
+
+    private ScheduledTask add(Runnable command, int delay, long period) {
+        if(shuttingDown)
+            throw new RejectedExecutionException();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+        ScheduledWorkUnit timer = new ScheduledWorkUnit(this, command, deadline, period);
+        newTimers.add(timer);
+        //the ticker may have terminated without seeing the timer
+        if(shuttingDown) {
+            cancelPending();
+            throw new RejectedExecutionException();
+        }
+        return timer;
+    }
+
+    void reschedule(ScheduledWorkUnit timer) {
+        newTimers.add(timer);
+        if(shuttingDown)
+            cancelPending();
+    }
+
+    void cancelled(ScheduledWorkUnit timer) {
+        if(!shuttingDown)
+            cancelledTimers.add(timer);
+    }
+
+    private void tick() {
+        while (!shuttingDown) {
+            long sleepTime = startTime + (wheel.currentTick() + 1) * tickNanos - System.nanoTime();
+            if(sleepTime > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+
+            transferTimers();
+            saturated = false;
+
+            //catch up if the ticker was late
+            long now = System.nanoTime();
+            try {
+                while (!shuttingDown && startTime + (wheel.currentTick() + 1) * tickNanos <= now)
+                    wheel.advance(this::dispatch);
+            } catch (InterruptedException | RejectedExecutionException e) {
+                //pool or scheduler were shutdown while waiting to deliver work
+                shuttingDown = true;
+            }
+        }
+        wheel.clear(SimpleScheduledExecutor::cancelTimer);
+        cancelledTimers.clear();
+        cancelPending();
+    }
+
+    // called after shuttingDown is set, by the ticker and by whoever added a timer meanwhile
+    private void cancelPending() {
+        ScheduledWorkUnit timer;
+        while ((timer = newTimers.poll()) != null)
+            cancelTimer(timer);
+    }
+
+    private static void cancelTimer(ScheduledWorkUnit timer) {
+        timer.state.compareAndSet(ScheduledWorkUnit.WAITING, ScheduledWorkUnit.CANCELLED);
+    }
+
+    private void transferTimers() {
+        ScheduledWorkUnit timer;
+        while ((timer = newTimers.poll()) != null) {
+            if(timer.state.get() != ScheduledWorkUnit.WAITING)
+                continue;
+            timer.deadlineTick = toTick(timer.deadline);
+            wheel.add(timer);
+        }
+        while ((timer = cancelledTimers.poll()) != null)
+            wheel.remove(timer);
+    }
+
+    private void dispatch(ScheduledWorkUnit timer) throws InterruptedException {
+        if(!timer.state.compareAndSet(ScheduledWorkUnit.WAITING, ScheduledWorkUnit.DISPATCHED))
+            return;
+
+        boolean executed;
+        try {
+            //after a timeout the pool is still saturated, the remaining timers of the tick don't wait
+            executed = pool.execute(timer::run, saturated ? 0 : dispatchTimeout);
+        } catch (InterruptedException | RejectedExecutionException e) {
+            timer.state.compareAndSet(ScheduledWorkUnit.DISPATCHED, ScheduledWorkUnit.CANCELLED);
+            throw e;
+        }
+
+        if(!executed) {
+            saturated = true;
+            //retried on the next tick, unless cancelled meanwhile
+            if(timer.state.compareAndSet(ScheduledWorkUnit.DISPATCHED, ScheduledWorkUnit.WAITING))
+                newTimers.add(timer);
+        }
+    }
+
+    private long toTick(long deadline) {
+        long elapsed = deadline - startTime;
+        return (elapsed + tickNanos - 1) / tickNanos;
+    }
+}
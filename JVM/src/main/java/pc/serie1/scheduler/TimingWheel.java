@@ -0,0 +1,140 @@
+package pc.serie1.scheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel, with O(1) add and remove.
+ * Each level has WHEEL_SIZE slots and each slot of a level spans a full turn of the level below,
+ * so timers are cascaded to lower levels as time advances and expire from the first level.
+ * Not thread safe, it is owned by the ticker thread of SimpleScheduledExecutor.
+ */
+class TimingWheel {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+    private static final long MAX_DELTA = 1L << (WHEEL_BITS * LEVELS);
+
+    @FunctionalInterface
+    interface ExpirationHandler {
+        void expired(ScheduledWorkUnit timer) throws InterruptedException;
+    }
+
+    static class Bucket {
+        private ScheduledWorkUnit head, tail;
+
+        private void add(ScheduledWorkUnit timer) {
+            timer.bucket = this;
+            timer.prev = tail;
+            timer.next = null;
+            if(tail == null)
+                head = timer;
+            else
+                tail.next = timer;
+            tail = timer;
+        }
+
+        private void remove(ScheduledWorkUnit timer) {
+            if(timer.prev == null)
+                head = timer.next;
+            else
+                timer.prev.next = timer.next;
+            if(timer.next == null)
+                tail = timer.prev;
+            else
+                timer.next.prev = timer.prev;
+            timer.bucket = null;
+            timer.prev = timer.next = null;
+        }
+
+        private ScheduledWorkUnit clear() {
+            ScheduledWorkUnit first = head;
+            head = tail = null;
+            return first;
+        }
+    }
+
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private long currentTick = 0;
+
+    TimingWheel() {
+        for (Bucket[] wheel : wheels)
+            for (int i = 0; i < WHEEL_SIZE; i++)
+                wheel[i] = new Bucket();
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    void add(ScheduledWorkUnit timer) {
+        //the slot of the current tick was already expired
+        if(timer.deadlineTick <= currentTick)
+            timer.deadlineTick = currentTick + 1;
+        insert(timer);
+    }
+
+    void remove(ScheduledWorkUnit timer) {
+        if(timer.bucket == null)
+            return;
+        timer.bucket.remove(timer);
+    }
+
+    void advance(ExpirationHandler handler) throws InterruptedException {
+        currentTick++;
+
+        //cascade the slot of each level whose lower levels completed a turn
+        for (int level = 1; level < LEVELS; level++) {
+            if((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0)
+                break;
+            ScheduledWorkUnit timer = slot(level, currentTick).clear();
+            while (timer != null) {
+                ScheduledWorkUnit next = timer.next;
+                insert(timer);
+                timer = next;
+            }
+        }
+
+        ScheduledWorkUnit timer = slot(0, currentTick).clear();
+        while (timer != null) {
+            ScheduledWorkUnit next = timer.next;
+            timer.bucket = null;
+            timer.prev = timer.next = null;
+            handler.expired(timer);
+            timer = next;
+        }
+    }
+
+    // removes every timer, used when the ticker terminates
+    void clear(Consumer<ScheduledWorkUnit> handler) {
+        for (Bucket[] wheel : wheels) {
+            for (Bucket bucket : wheel) {
+                ScheduledWorkUnit timer = bucket.clear();
+                while (timer != null) {
+                    ScheduledWorkUnit next = timer.next;
+                    timer.bucket = null;
+                    timer.prev = timer.next = null;
+                    handler.accept(timer);
+                    timer = next;
+                }
+            }
+        }
+    }
+
+    private void insert(ScheduledWorkUnit timer) {
+        long delta = timer.deadlineTick - currentTick;
+        //timers beyond the top level are parked in its farthest slot and reinserted when cascaded
+        long slotTick = delta < MAX_DELTA ? timer.deadlineTick : currentTick + MAX_DELTA - 1;
+        if(delta >= MAX_DELTA)
+            delta = MAX_DELTA - 1;
+
+        int level = 0;
+        while ((delta >>> (WHEEL_BITS * (level + 1))) != 0)
+            level++;
+        slot(level, slotTick).add(timer);
+    }
+
+    private Bucket slot(int level, long tick) {
+        return wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+    }
+}
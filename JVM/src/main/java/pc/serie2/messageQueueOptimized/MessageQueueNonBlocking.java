@@ -1,5 +1,6 @@
 package pc.serie2.messageQueueOptimized;
 
+import pc.utils.ManagedBlocking;
 import pc.utils.Timeouts;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -48,6 +49,8 @@ public class MessageQueueNonBlocking<T> {
         if(Timeouts.noWait(timeout))
             return Optional.empty();
 
+        //the pool is told before mon is held, it takes its own lock and may start a worker
+        boolean managed = ManagedBlocking.begin();
         try {
             mon.lock();
             long targetTime = Timeouts.start(timeout);
@@ -77,6 +80,7 @@ public class MessageQueueNonBlocking<T> {
             }
         } finally {
             mon.unlock();
+            ManagedBlocking.end(managed);
         }
     }
 
@@ -127,7 +131,8 @@ public class MessageQueueNonBlocking<T> {
             if(Timeouts.noWait(timeout))
                 return false;
 
-            //wait to deliver
+            //wait to deliver, the pool is told before messageMon is held
+            boolean managed = ManagedBlocking.begin();
             try {
                 messageMon.lock();
                 long targetTime = Timeouts.start(timeout);
@@ -146,6 +151,7 @@ public class MessageQueueNonBlocking<T> {
                 }
             } finally {
                 messageMon.unlock();
+                ManagedBlocking.end(managed);
             }
 
             return true;
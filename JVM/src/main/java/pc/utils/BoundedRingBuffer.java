@@ -0,0 +1,95 @@
+package pc.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock free queue for multiple producers (Vyukov's bounded queue).
+ * Each slot has a sequence telling if it is free for the producer of that position or ready for its consumer,
+ * so offer and poll never allocate and a full buffer is detected without locks.
+ */
+public class BoundedRingBuffer<E> {
+    private final E[] items;
+    private final AtomicLongArray sequences;
+    private final int capacity;
+    //at least 2, with a single slot its published and free sequences would be the same
+    private final int slots;
+
+    //next positions to offer and to poll
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    public BoundedRingBuffer(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException();
+        this.capacity = capacity;
+        slots = Math.max(capacity, 2);
+        //only holds offered items, so it is an array of E
+        @SuppressWarnings("unchecked")
+        E[] items = (E[]) new Object[slots];
+        this.items = items;
+        sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++)
+            sequences.set(i, i);
+    }
+
+    // returns false if the buffer is full
+    public boolean offer(E item) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position % slots);
+            long diff = sequences.get(index) - position;
+            if(diff == 0) {
+                if(slots != capacity && position - head.get() >= capacity)
+                    return false;
+                if(tail.compareAndSet(position, position + 1)) {
+                    items[index] = item;
+                    //publishes the item to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if(diff < 0)
+                return false;
+            else
+                position = tail.get();
+        }
+    }
+
+    // returns null if there is no item ready
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position % slots);
+            long diff = sequences.get(index) - (position + 1);
+            if(diff == 0) {
+                if(head.compareAndSet(position, position + 1)) {
+                    E item = items[index];
+                    items[index] = null;
+                    //frees the slot for the producer one lap ahead
+                    sequences.set(index, position + slots);
+                    return item;
+                }
+                position = head.get();
+            }
+            else if(diff < 0)
+                return null;
+            else
+                position = head.get();
+        }
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,26 @@
+package pc.utils;
+
+// Blocking primitives call begin() before waiting and end() after, so when the calling thread
+// belongs to a pool the pool may start a compensation worker while it's blocked.
+// Both take the pool lock, so they're called without holding the primitive's own lock.
+// For any other thread these are no-ops.
+public class ManagedBlocking {
+
+    public interface CompensatedThread {
+        void blocked();
+        void unblocked();
+    }
+
+    public static boolean begin() {
+        Thread th = Thread.currentThread();
+        if(!(th instanceof CompensatedThread))
+            return false;
+        ((CompensatedThread) th).blocked();
+        return true;
+    }
+
+    public static void end(boolean managed) {
+        if(managed)
+            ((CompensatedThread) Thread.currentThread()).unblocked();
+    }
+}
@@ -0,0 +1,53 @@
+package pc.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+// Releases the mapping of a MappedByteBuffer now instead of when it's garbage collected, so its file can be
+// deleted right away (on Windows a mapped file can't be deleted at all).
+// The buffer must not be accessed afterwards, an access to an unmapped buffer crashes the JVM.
+public class MappedBuffers {
+
+    //Unsafe.invokeCleaner on Java 9+, the buffer's own cleaner on Java 8, null if neither is accessible
+    private static final Unmapper UNMAPPER = unmapper();
+
+    @FunctionalInterface
+    private interface Unmapper {
+        void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private static Unmapper unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Java 8
+        }
+
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> clean.invoke(cleaner.invoke(buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // returns false if the mapping is left to the garbage collector
+    public static boolean unmap(MappedByteBuffer buffer) {
+        if(UNMAPPER == null)
+            return false;
+        try {
+            UNMAPPER.unmap(buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
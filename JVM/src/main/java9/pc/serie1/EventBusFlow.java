@@ -0,0 +1,210 @@
+package pc.serie1;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reactive Streams adapters of EventBus. The demand of a Flow.Subscriber is the demand of its bus subscription,
+ * events not requested yet wait in the bounded subscription buffer, and the demand a Flow.Subscriber of this
+ * class signals upstream is limited to what it can publish, so no adapter buffers without bound.
+ */
+public final class EventBusFlow {
+
+    private EventBusFlow() {
+    }
+
+    /**
+     * Each Flow.Subscriber gets its own subscription of the type, driven by the pool, and is completed after the
+     * last event when the bus is shutdown. With OverflowPolicy.block() publishers wait for its demand.
+     * A non-positive request or a pool that rejects the drain cancels the subscription and signals onError,
+     * an exception thrown by onNext cancels it and is reported to the pool.
+     */
+    public static <T> Flow.Publisher<T> publisher(EventBus bus, Class<T> eventType, SimpleThreadPoolExecutor pool,
+                                                  EventBus.OverflowPolicy overflowPolicy) {
+        if(bus == null || eventType == null || pool == null || overflowPolicy == null)
+            throw new IllegalArgumentException();
+
+        return subscriber -> {
+            Objects.requireNonNull(subscriber);
+            //signalled first, the bus subscription may complete as soon as it exists
+            PublisherSubscription<T> flowSubscription = new PublisherSubscription<>(subscriber);
+            subscriber.onSubscribe(flowSubscription);
+
+            EventBus.Subscription subscription = bus.subscribeEventOnDemand(flowSubscription::next, eventType, pool,
+                    overflowPolicy, flowSubscription::complete, flowSubscription::error);
+            flowSubscription.attach(subscription);
+
+            //the bus was already shutdown
+            if(!subscription.isActive())
+                flowSubscription.complete();
+        };
+    }
+
+    private static final class PublisherSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private volatile EventBus.Subscription subscription;
+        //requested before the bus subscription is attached
+        private final AtomicLong pendingRequests = new AtomicLong(0);
+        private volatile boolean cancelled = false;
+        //onComplete or onError is signalled once, and not after cancel
+        private final AtomicBoolean terminated = new AtomicBoolean(false);
+        //null for onComplete, published by the increment of signalling
+        private Throwable error;
+        //onNext and the terminal signal in progress, the one that ends onNext signals the terminal one requested
+        // meanwhile, so signals are never concurrent
+        private final AtomicInteger signalling = new AtomicInteger(0);
+
+        private PublisherSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        // requests and cancels made meanwhile see the subscription or are applied here
+        private void attach(EventBus.Subscription subscription) {
+            this.subscription = subscription;
+            requestPending(subscription);
+            if(cancelled)
+                subscription.unsubscribe();
+        }
+
+        private void requestPending(EventBus.Subscription subscription) {
+            long pending = pendingRequests.getAndSet(0);
+            if(pending > 0)
+                subscription.request(pending);
+        }
+
+        // the handler of the bus subscription, called by one drain at a time
+        private void next(T item) {
+            //a terminal signal was requested, no more items are signalled
+            if(signalling.get() != 0 || !signalling.compareAndSet(0, 1))
+                return;
+            try {
+                subscriber.onNext(item);
+            } catch (RuntimeException | Error e) {
+                //the subscriber is considered cancelled (§2.13), the drain reports the exception
+                cancel();
+                throw e;
+            } finally {
+                if(signalling.decrementAndGet() != 0)
+                    signalTerminal();
+            }
+        }
+
+        private void complete() {
+            terminate(null);
+        }
+
+        private void error(Throwable throwable) {
+            terminate(throwable);
+        }
+
+        private void terminate(Throwable throwable) {
+            if(cancelled || !terminated.compareAndSet(false, true))
+                return;
+            error = throwable;
+            if(signalling.getAndIncrement() == 0)
+                signalTerminal();
+        }
+
+        private void signalTerminal() {
+            if(error == null)
+                subscriber.onComplete();
+            else
+                subscriber.onError(error);
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                //requested before cancelling, after cancel nothing is signalled
+                terminate(new IllegalArgumentException("non-positive request: " + n));
+                cancel();
+                return;
+            }
+
+            EventBus.Subscription current = subscription;
+            if(current != null) {
+                current.request(n);
+                return;
+            }
+            pendingRequests.accumulateAndGet(n, (p, added) -> p + added < 0 ? Long.MAX_VALUE : p + added);
+            current = subscription;
+            if(current != null)
+                requestPending(current);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            EventBus.Subscription current = subscription;
+            if(current != null)
+                current.unsubscribe();
+        }
+    }
+
+    // publishes on the bus, requesting up to maxInFlight items ahead
+    public static <E> BusSubscriber<E> subscriber(EventBus bus, int maxInFlight) {
+        if(bus == null || maxInFlight <= 0)
+            throw new IllegalArgumentException();
+        return new BusSubscriber<>(bus, maxInFlight);
+    }
+
+    /**
+     * Publishes on the bus the items of a Flow.Publisher, an item is requested after one is published, so blocking
+     * overflow policies slow down the upstream publisher. Cancels the upstream when the bus is shutdown.
+     */
+    public static final class BusSubscriber<E> implements Flow.Subscriber<E> {
+        private final EventBus bus;
+        private final int maxInFlight;
+        private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private BusSubscriber(EventBus bus, int maxInFlight) {
+            this.bus = bus;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            Objects.requireNonNull(subscription);
+            //a subscriber is only subscribed once
+            if(!upstream.compareAndSet(null, subscription)) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(maxInFlight);
+        }
+
+        @Override
+        public void onNext(E item) {
+            Objects.requireNonNull(item);
+            try {
+                bus.publishEvent(item);
+            } catch (IllegalStateException e) {
+                upstream.get().cancel();
+                completion.completeExceptionally(e);
+                return;
+            }
+            upstream.get().request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(Objects.requireNonNull(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+
+        // completed when the upstream completes, exceptionally on its error or if the bus is shutdown
+        public CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+    }
+}
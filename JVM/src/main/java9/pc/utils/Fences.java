@@ -0,0 +1,17 @@
+package pc.utils;
+
+import java.lang.invoke.VarHandle;
+
+// Memory fences for plain accesses the JMM doesn't order, like the ones to memory shared with other processes.
+public class Fences {
+
+    // the loads and stores before it are ordered before the stores after it
+    public static void releaseFence() {
+        VarHandle.releaseFence();
+    }
+
+    // the loads before it are ordered before the loads and stores after it
+    public static void acquireFence() {
+        VarHandle.acquireFence();
+    }
+}
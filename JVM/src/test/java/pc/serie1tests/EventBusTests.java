@@ -4,31 +4,104 @@ import org.junit.Assert;
 import org.junit.Test;
 import pc.Helper;
 import pc.serie1.EventBus;
+import pc.serie1.EventBusStats;
+import pc.serie1.EventCodec;
+import pc.serie1.EventJournal;
+import pc.serie1.SharedMemoryTransport;
+import pc.serie1.SimpleThreadPoolExecutor;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Rules:
- *  -> Bus has max events pending for each subscriber buffer;
+ *  -> Bus has max events pending for each subscriber buffer, it must be greater than 0;
  *
  *  -> subscribeEvent():
  *       o Subscribes one event with an 'handler' for when a message of that event type is published, that handler is executed.
  *       o The handler is executed by the same thread that called subscribeEvent().
+ *       o An optional filter is evaluated when publishing, the events it rejects never take buffer slots.
  *       o This is a blocking method. It only returns in case of:
  *          - Shutdown(), but only returns after processing all pending events;
  *          - InterruptedException, this occurs in case the calling thread is interrupted;
  *
+ *  -> subscribeEventBatch():
+ *       o Like subscribeEvent() but the handler receives lists with up to maxBatchSize pending events.
+ *       o After the first event of a batch it waits up to maxLinger for more events before calling the handler.
+ *
+ *  -> subscribeEventAsync():
+ *       o Subscribes without blocking, the handler is executed on a SimpleThreadPoolExecutor only when there are
+ *         pending events, one at a time and in publishing order for each subscription.
+ *       o Ends on shutdown(), after processing all pending events, or when unsubscribed.
+ *       o Publishers never wait for a worker, the subscription waits in the pool queue when the pool is busy.
+ *       o subscribeEventOnDemand() only hands the handler the events requested with Subscription.request(n),
+ *         used by the Flow adapters of the java9 source set (EventBusFlowTests).
+ *
+ *  -> subscribeTopic() / subscribeTopicAsync() / publishEvent(topic, message):
+ *       o Events can also be published to string topics, levels separated by '.'.
+ *       o Subscriptions use topic patterns where '*' matches one level and '#' the remaining levels (zero or more).
+ *       o Invalid patterns and topics with wildcards throw IllegalArgumentException.
+ *
+ *  -> enableLastValueCache(): keeps the latest event of a type or subtype, or of each key, new subscriptions of the type
+ *     receive them before the events published afterwards.
+ *
+ *  -> attachJournal() / subscribeEventFrom():
+ *       o The events published with exactly a journaled type are appended to its EventJournal before delivery.
+ *       o subscribeEventFrom() replays the journal from a sequence, then receives the published events, each event
+ *         once and with its sequence. Throws IllegalStateException if the type has no journal.
+ *       o The journal keeps the events in memory mapped segment files and deletes the oldest segments by age or size.
+ *
+ *  -> SharedMemoryTransport: bridges the events of a type between the buses of processes on the same host through
+ *     a ring in a memory mapped file, a single process exports the type and any number of processes import it.
+ *
  *  -> pubishEvent():
  *      o Cases of success:
  *          - Puts the message in the buffer of all subscribers of this event and returns.
+ *          - Subscribers of a superclass or interface of the event's class also receive it.
  *      o Cases of failure:
  *          - The event is discarded for each subscriber that has eventsInBuffer >= maxPending;
  *          - Throws IllegalStateException if the Bus is already shutdown.
+ *      o Each subscription can choose what happens when its buffer is full (OverflowPolicy):
+ *          - dropNewest (default): the published event is discarded and counted;
+ *          - dropOldest: the oldest pending event is discarded;
+ *          - block: the publisher waits for space up to a timeout, then discards the event;
+ *          - conflate: only the latest pending event of each key is kept.
  *
  *  -> Shutdown(): Blocks the calling thread until all pending events are processed.
  *
+ *  -> getStats(): Returns a snapshot of published, delivered and dropped counts, buffer depths and handler time
+ *     histograms, for each subscribed type and each subscriber, also available through JMX after registerMBean().
+ *
+ *  -> SHARED_RING delivery mode: the events of a type are written once in a ring of maxPending events read by
+ *     all its subscribers, publishers wait for the slowest subscriber instead of discarding events, so
+ *     subscribing with an overflow policy throws IllegalArgumentException.
+ *       o A publisher interrupted, or a handler that would wait for its own subscription, discards the event.
+ *
+ *  -> Each event type and each subscriber buffer is synchronized independently, a subscriber busy with one
+ *     type doesn't delay the delivery of other types.
+ *
  */
 public class EventBusTests {
 
@@ -77,6 +150,12 @@ public class EventBusTests {
     }
 
 
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalid_maxPending() {
+        new EventBus(0);
+    }
+
+
     /****************** TEST subscribeEvent() *******************************/
     @Test
     public void test_return_subscription_in_shutdown() throws InterruptedException {
@@ -120,6 +199,745 @@ public class EventBusTests {
     }
 
 
+    @Test
+    public void test_filtered_events_do_not_take_buffer_slots() throws InterruptedException {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.dropNewest();
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<Integer> handler = i -> {
+                received.add(i);
+                if(received.size() == 1) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Assert.fail();
+                    }
+                }
+            };
+            Predicate<Integer> evens = i -> i % 2 == 0;
+            bus.subscribeEvent(handler, Integer.class, evens, policy);
+        });
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(0);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        for (int i = 1; i <= maxPending * 2; i++)
+            bus.publishEvent(i);
+
+        release.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(0, policy.getDroppedCount());
+        Assert.assertEquals(maxPending + 1, received.size());
+        for (int i = 0; i <= maxPending; i++)
+            Assert.assertEquals(i * 2, (int) received.get(i));
+    }
+
+    @Test
+    public void test_shared_ring_filter() throws InterruptedException {
+        int numOfReps = 1000;
+        EventBus bus = new EventBus(64, EventBus.DeliveryMode.SHARED_RING);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+        AtomicBoolean filteredEventDelivered = new AtomicBoolean(false);
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<Integer> handler = i -> {
+                if(i % 2 != 0)
+                    filteredEventDelivered.set(true);
+                eventsProcessed.incrementAndGet();
+            };
+            Predicate<Integer> evens = i -> i % 2 == 0;
+            bus.subscribeEvent(handler, Integer.class, evens);
+        });
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        for (int i = 0; i < numOfReps; i++)
+            bus.publishEvent(i);
+
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertFalse(filteredEventDelivered.get());
+        Assert.assertEquals(numOfReps / 2, eventsProcessed.get());
+    }
+
+    /****************** TEST subscribeEventBatch() *******************************/
+    @Test
+    public void test_batches_respect_max_batch_size() throws InterruptedException {
+        int numOfReps = 1000;
+        int maxBatchSize = 32;
+        EventBus bus = new EventBus(numOfReps);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean batchTooBig = new AtomicBoolean(false);
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<List<Integer>> batchHandler = batch -> {
+                if(batch.size() > maxBatchSize)
+                    batchTooBig.set(true);
+                received.addAll(batch);
+            };
+            bus.subscribeEventBatch(batchHandler, Integer.class, maxBatchSize, 10);
+        });
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        for (int i = 0; i < numOfReps; i++)
+            bus.publishEvent(i);
+
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertFalse(batchTooBig.get());
+        Assert.assertEquals(numOfReps, received.size());
+        for (int i = 0; i < numOfReps; i++)
+            Assert.assertEquals(i, (int) received.get(i));
+    }
+
+    @Test
+    public void test_batch_lingers_for_more_events() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<List<Integer>> batchHandler = batches::add;
+            bus.subscribeEventBatch(batchHandler, Integer.class, 10, 1000);
+        });
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(1);
+        Thread.sleep(100);
+        bus.publishEvent(2);
+        Thread.sleep(100);
+        bus.publishEvent(3);
+
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), batches.get(0));
+    }
+
+
+    /****************** TEST subscribeEventAsync() *******************************/
+    @Test
+    public void test_async_subscribers_share_pool_threads() throws InterruptedException {
+        int numOfSubscribers = 1000;
+        int numOfReps = 50;
+        EventBus bus = new EventBus(numOfReps);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(4, 1000);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+        AtomicBoolean outOfOrder = new AtomicBoolean(false);
+
+        for (int i = 0; i < numOfSubscribers; i++) {
+            AtomicInteger expected = new AtomicInteger(0);
+            Consumer<Integer> handler = n -> {
+                if(n != expected.getAndIncrement())
+                    outOfOrder.set(true);
+                eventsProcessed.incrementAndGet();
+            };
+            bus.subscribeEventAsync(handler, Integer.class, pool);
+        }
+
+        for (int i = 0; i < numOfReps; i++)
+            bus.publishEvent(i);
+
+        bus.shutdown();
+
+        Assert.assertFalse(outOfOrder.get());
+        Assert.assertEquals(numOfSubscribers * numOfReps, eventsProcessed.get());
+        Assert.assertTrue(pool.getPoolSize() <= 4);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_async_handler_exceptions_go_to_pool_handler() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        AtomicInteger exceptionsHandled = new AtomicInteger(0);
+        pool.setExceptionHandler((work, e) -> {
+            if(e instanceof IllegalStateException)
+                exceptionsHandled.incrementAndGet();
+        });
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+
+        Consumer<Integer> handler = n -> {
+            eventsProcessed.incrementAndGet();
+            if(n % 2 == 0)
+                throw new IllegalStateException("expected by the test");
+        };
+        bus.subscribeEventAsync(handler, Integer.class, pool);
+
+        for (int i = 0; i < 10; i++)
+            bus.publishEvent(i);
+        bus.shutdown();
+
+        //the subscription survives the exceptions
+        Assert.assertEquals(10, eventsProcessed.get());
+        Assert.assertEquals(5, exceptionsHandled.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_async_publish_does_not_wait_for_a_busy_pool() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+        Consumer<Integer> handler = n -> eventsProcessed.incrementAndGet();
+        bus.subscribeEventAsync(handler, Integer.class, pool);
+
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+        }, 1000);
+
+        long start = System.nanoTime();
+        bus.publishEvent(1);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+        release.countDown();
+        bus.shutdown();
+        Assert.assertEquals(1, eventsProcessed.get());
+        Assert.assertEquals(0, pool.getStats().getTimedOutCount());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_async_unsubscribe_stops_delivery() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+
+        Consumer<Integer> handler = n -> eventsProcessed.incrementAndGet();
+        EventBus.Subscription subscription = bus.subscribeEventAsync(handler, Integer.class, pool);
+        Assert.assertTrue(subscription.isActive());
+
+        bus.publishEvent(1);
+        Thread.sleep(100);
+        Assert.assertEquals(1, eventsProcessed.get());
+
+        subscription.unsubscribe();
+        Assert.assertFalse(subscription.isActive());
+        bus.publishEvent(2);
+
+        //returns without waiting for the unsubscribed subscription
+        bus.shutdown();
+        Assert.assertEquals(1, eventsProcessed.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+
+    /****************** TEST topics *******************************/
+    @Test
+    public void test_topic_wildcards() throws InterruptedException {
+        EventBus bus = new EventBus(100);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        String[] patterns = { "orders.eu.new", "orders.eu.*", "orders.*.new", "orders.#", "#", "orders.us.#", "stock" };
+        ConcurrentHashMap<String, List<String>> received = new ConcurrentHashMap<>();
+
+        for (String pattern : patterns) {
+            List<String> topics = Collections.synchronizedList(new ArrayList<>());
+            received.put(pattern, topics);
+            Consumer<String> handler = topics::add;
+            bus.subscribeTopicAsync(handler, pattern, pool);
+        }
+
+        for (String topic : new String[] { "orders.eu.new", "orders.us.new", "orders.eu.cancelled", "orders", "stock" })
+            bus.publishEvent(topic, topic);
+
+        bus.shutdown();
+
+        Assert.assertEquals(Arrays.asList("orders.eu.new"), received.get("orders.eu.new"));
+        Assert.assertEquals(Arrays.asList("orders.eu.new", "orders.eu.cancelled"), received.get("orders.eu.*"));
+        Assert.assertEquals(Arrays.asList("orders.eu.new", "orders.us.new"), received.get("orders.*.new"));
+        Assert.assertEquals(Arrays.asList("orders.eu.new", "orders.us.new", "orders.eu.cancelled", "orders"),
+                received.get("orders.#"));
+        Assert.assertEquals(5, received.get("#").size());
+        Assert.assertEquals(Arrays.asList("orders.us.new"), received.get("orders.us.#"));
+        Assert.assertEquals(Arrays.asList("stock"), received.get("stock"));
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_many_topic_subscriptions() throws InterruptedException {
+        int numOfSubscriptions = 20000;
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(4, 1000);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+
+        EventBus.Subscription[] subscriptions = new EventBus.Subscription[numOfSubscriptions];
+        Consumer<Integer> handler = i -> eventsProcessed.incrementAndGet();
+        for (int i = 0; i < numOfSubscriptions; i++)
+            subscriptions[i] = bus.subscribeTopicAsync(handler, "prices." + i + ".*", pool);
+
+        for (int i = 0; i < numOfSubscriptions; i++)
+            bus.publishEvent("prices." + i + ".eur", i);
+        for (int i = 0; i < numOfSubscriptions / 2; i++)
+            subscriptions[i].unsubscribe();
+        for (int i = 0; i < numOfSubscriptions; i++)
+            bus.publishEvent("prices." + i + ".usd", i);
+
+        bus.shutdown();
+        Assert.assertEquals(numOfSubscriptions + numOfSubscriptions / 2, eventsProcessed.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_invalid_topics() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        Consumer<String> handler = s -> {};
+
+        for (String pattern : new String[] { "orders.#.new", "orders.e*", "orders..new", "" }) {
+            try {
+                bus.subscribeTopicAsync(handler, pattern, pool);
+                Assert.fail(pattern);
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+        try {
+            bus.publishEvent("orders.*", "");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        bus.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void test_last_value_cache_delivers_latest_event_to_new_subscribers() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        bus.enableLastValueCache(Integer.class);
+        bus.enableLastValueCache(String.class, (String s) -> s.substring(0, 1));
+
+        for (int i = 0; i < 5; i++)
+            bus.publishEvent(i);
+        for (String s : new String[] { "a1", "b1", "a2", "c1", "b2" })
+            bus.publishEvent(s);
+
+        List<Integer> numbers = Collections.synchronizedList(new ArrayList<>());
+        List<String> strings = Collections.synchronizedList(new ArrayList<>());
+        Consumer<Integer> numbersHandler = numbers::add;
+        Consumer<String> stringsHandler = strings::add;
+        bus.subscribeEventAsync(numbersHandler, Integer.class, pool);
+        bus.subscribeEventAsync(stringsHandler, String.class, pool);
+
+        bus.publishEvent(5);
+        bus.shutdown();
+
+        Assert.assertEquals(Arrays.asList(4, 5), numbers);
+        Collections.sort(strings);
+        Assert.assertEquals(Arrays.asList("a2", "b2", "c1"), strings);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_last_value_cache_does_not_wait_for_room_in_the_new_subscription() throws InterruptedException {
+        int numOfKeys = 6;
+        EventBus bus = new EventBus(2);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        bus.enableLastValueCache(String.class, (String s) -> s.substring(0, 1));
+        for (int i = 0; i < numOfKeys; i++)
+            bus.publishEvent((char) ('a' + i) + "1");
+
+        List<String> strings = Collections.synchronizedList(new ArrayList<>());
+        Consumer<String> handler = strings::add;
+        long start = System.nanoTime();
+        bus.subscribeEventAsync(handler, String.class, pool, EventBus.OverflowPolicy.block(1000));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        bus.shutdown();
+
+        //more keys than the buffer holds, none is dropped
+        Assert.assertEquals(numOfKeys, strings.size());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_last_value_cache_keeps_events_of_subtypes() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        bus.enableLastValueCache(Number.class);
+        bus.enableLastValueCache(Integer.class);
+
+        bus.publishEvent(1);
+        bus.publishEvent(2L);
+
+        List<Number> numbers = Collections.synchronizedList(new ArrayList<>());
+        List<Number> integers = Collections.synchronizedList(new ArrayList<>());
+        Consumer<Number> numbersHandler = numbers::add;
+        Consumer<Number> integersHandler = integers::add;
+        bus.subscribeEventAsync(numbersHandler, Number.class, pool);
+        bus.subscribeEventAsync(integersHandler, Integer.class, pool);
+        bus.shutdown();
+
+        Assert.assertEquals(Collections.singletonList(2L), numbers);
+        Assert.assertEquals(Collections.singletonList(1), integers);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_journal_continues_after_reopening() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            try (EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), 256)) {
+                for (int i = 0; i < 100; i++)
+                    Assert.assertEquals(i, journal.append(String.valueOf(i)));
+            }
+
+            try (EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), 256)) {
+                Assert.assertEquals(100, journal.nextSequence());
+                Assert.assertEquals(100, journal.append("100"));
+
+                EventJournal<String>.Reader reader = journal.reader(40);
+                for (int i = 40; i <= 100; i++)
+                    Assert.assertEquals(String.valueOf(i), reader.poll());
+                Assert.assertNull(reader.poll());
+                Assert.assertEquals(101, reader.nextSequence());
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void test_journal_retention_deletes_oldest_segments() throws IOException {
+        int segmentSize = 256;
+        Path directory = Files.createTempDirectory("journal");
+        try (EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), segmentSize,
+                Long.MAX_VALUE, segmentSize * 3)) {
+            for (int i = 0; i < 1000; i++)
+                journal.append(String.valueOf(i));
+
+            try (Stream<Path> files = Files.list(directory)) {
+                Assert.assertTrue(files.count() <= 3);
+            }
+            long first = journal.firstSequence();
+            Assert.assertTrue(first > 0);
+
+            //the deleted events are skipped
+            EventJournal<String>.Reader reader = journal.reader(0);
+            for (long i = first; i < 1000; i++)
+                Assert.assertEquals(String.valueOf(i), reader.poll());
+            Assert.assertNull(reader.poll());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void test_journal_reader_moves_past_deleted_segments() throws IOException {
+        int segmentSize = 256;
+        Path directory = Files.createTempDirectory("journal");
+        //closed while reading, so not a resource of the try
+        EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), segmentSize,
+                Long.MAX_VALUE, segmentSize * 3);
+        try {
+            journal.append("0");
+            EventJournal<String>.Reader reader = journal.reader(0);
+            Assert.assertEquals("0", reader.poll());
+
+            //the segment of the reader is unmapped and deleted
+            for (int i = 1; i < 1000; i++)
+                journal.append(String.valueOf(i));
+            long first = journal.firstSequence();
+            Assert.assertTrue(first > 1);
+            for (long i = first; i < 1000; i++)
+                Assert.assertEquals(String.valueOf(i), reader.poll());
+
+            journal.append("1000");
+            journal.close();
+            Assert.assertNull(reader.poll());
+        } finally {
+            journal.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void test_subscribe_from_sequence_replays_then_goes_live() throws IOException, InterruptedException {
+        int numOfReps = 10000;
+        Path directory = Files.createTempDirectory("journal");
+        try (EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), 4096)) {
+            EventBus bus = new EventBus(numOfReps);
+            bus.attachJournal(String.class, journal);
+            for (int i = 0; i < numOfReps; i++)
+                bus.publishEvent(String.valueOf(i));
+
+            //published while the subscriber replays, each event is delivered once and in order
+            List<Long> sequences = new ArrayList<>();
+            AtomicBoolean mismatch = new AtomicBoolean(false);
+            Helper consumersHelper = new Helper();
+            consumersHelper.createAndStart(() -> bus.subscribeEventFrom((String event, long sequence) -> {
+                if(!event.equals(String.valueOf(sequence)))
+                    mismatch.set(true);
+                sequences.add(sequence);
+            }, String.class, numOfReps / 2));
+
+            for (int i = numOfReps; i < numOfReps * 2; i++)
+                bus.publishEvent(String.valueOf(i));
+
+            //ensure the subscriber went live
+            Thread.sleep(500);
+            bus.shutdown();
+            consumersHelper.join();
+
+            Assert.assertFalse(mismatch.get());
+            Assert.assertEquals(numOfReps * 2 - numOfReps / 2, sequences.size());
+            for (int i = 0; i < sequences.size(); i++)
+                Assert.assertEquals(numOfReps / 2 + i, (long) sequences.get(i));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void test_subscribe_from_sequence_misses_nothing_behind_a_slow_handler()
+            throws IOException, InterruptedException {
+        int numOfPublishers = 4;
+        int numOfReps = 50;
+        Path directory = Files.createTempDirectory("journal");
+        try (EventJournal<String> journal = new EventJournal<>(directory, EventCodec.utf8(), 4096)) {
+            //far fewer pending events than published while the handler is slow
+            EventBus bus = new EventBus(4);
+            bus.attachJournal(String.class, journal);
+
+            List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+            Helper consumersHelper = new Helper();
+            consumersHelper.createAndStart(() -> bus.subscribeEventFrom((String event, long sequence) -> {
+                sequences.add(sequence);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+            }, String.class, 0));
+
+            //ensure subscription
+            Thread.sleep(100);
+
+            Helper producersHelper = new Helper();
+            for (int p = 0; p < numOfPublishers; p++) {
+                producersHelper.createAndStart(() -> {
+                    for (int i = 0; i < numOfReps; i++)
+                        bus.publishEvent(String.valueOf(i));
+                });
+            }
+            producersHelper.join();
+            bus.shutdown();
+            consumersHelper.join();
+
+            Assert.assertEquals(numOfPublishers * numOfReps, sequences.size());
+            for (int i = 0; i < sequences.size(); i++)
+                Assert.assertEquals(i, (long) sequences.get(i));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_subscribe_from_sequence_requires_journal() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        bus.subscribeEventFrom((String event, long sequence) -> {}, String.class, 0);
+    }
+
+    @Test
+    public void test_shared_memory_transport_bridges_buses() throws IOException, InterruptedException {
+        int numOfReps = 5000;
+        Path file = Files.createTempFile("transport", ".ring");
+        EventBus exporterBus = new EventBus(numOfReps);
+        EventBus importerBus = new EventBus(numOfReps);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        try (SharedMemoryTransport<String> exporter = new SharedMemoryTransport<>(file, EventCodec.utf8(), 8192, 64);
+             SharedMemoryTransport<String> importer = new SharedMemoryTransport<>(file, EventCodec.utf8(), 8192, 64)) {
+            exporter.export(exporterBus, String.class, pool);
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            Consumer<String> handler = received::add;
+            Helper consumersHelper = new Helper();
+            consumersHelper.createAndStart(() -> importerBus.subscribeEvent(handler, String.class));
+            consumersHelper.createAndStart(() -> importer.importTo(importerBus));
+
+            //ensure subscription and import
+            Thread.sleep(100);
+
+            for (int i = 0; i < numOfReps; i++)
+                exporterBus.publishEvent(String.valueOf(i));
+            exporterBus.shutdown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < numOfReps && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            importerBus.shutdown();
+            consumersHelper.join();
+
+            Assert.assertEquals(0, importer.getLostCount());
+            Assert.assertEquals(numOfReps, received.size());
+            for (int i = 0; i < numOfReps; i++)
+                Assert.assertEquals(String.valueOf(i), received.get(i));
+        } finally {
+            pool.shutdown();
+            Assert.assertTrue(pool.awaitTermination(2000));
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void test_shared_memory_transport_has_single_exporter() throws IOException {
+        Path file = Files.createTempFile("transport", ".ring");
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        try (SharedMemoryTransport<String> first = new SharedMemoryTransport<>(file, EventCodec.utf8(), 16, 64);
+             SharedMemoryTransport<String> second = new SharedMemoryTransport<>(file, EventCodec.utf8(), 16, 64)) {
+            first.export(bus, String.class, pool);
+            try {
+                second.export(bus, String.class, pool);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                //expected
+            }
+
+            //the ring parameters must match
+            try {
+                new SharedMemoryTransport<>(file, EventCodec.utf8(), 32, 64);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        } finally {
+            bus.shutdown();
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void test_shared_memory_transport_bridges_processes() throws IOException, InterruptedException {
+        int numOfReps = 5000;
+        Path file = Files.createTempFile("transport", ".ring");
+        EventBus importerBus = new EventBus(numOfReps);
+        Process exporterProcess = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), ExporterProcess.class.getName(), file.toString(),
+                String.valueOf(numOfReps))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (SharedMemoryTransport<String> importer = new SharedMemoryTransport<>(file, EventCodec.utf8(), 8192, 64);
+             BufferedReader fromExporter = new BufferedReader(new InputStreamReader(exporterProcess.getInputStream()));
+             Writer toExporter = new OutputStreamWriter(exporterProcess.getOutputStream())) {
+            Assert.assertEquals("exported", fromExporter.readLine());
+
+            //the file lock is held by the other process
+            SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+            try {
+                importer.export(importerBus, String.class, pool);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                //expected
+            } finally {
+                pool.shutdown();
+            }
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            Consumer<String> handler = received::add;
+            Helper consumersHelper = new Helper();
+            consumersHelper.createAndStart(() -> importerBus.subscribeEvent(handler, String.class));
+            consumersHelper.createAndStart(() -> importer.importTo(importerBus));
+
+            //ensure subscription and import
+            Thread.sleep(100);
+            toExporter.write("publish\n");
+            toExporter.flush();
+
+            Assert.assertTrue(exporterProcess.waitFor(10, TimeUnit.SECONDS));
+            Assert.assertEquals(0, exporterProcess.exitValue());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < numOfReps && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            importerBus.shutdown();
+            consumersHelper.join();
+
+            Assert.assertEquals(0, importer.getLostCount());
+            Assert.assertEquals(numOfReps, received.size());
+            for (int i = 0; i < numOfReps; i++)
+                Assert.assertEquals(String.valueOf(i), received.get(i));
+        } finally {
+            exporterProcess.destroy();
+            Files.delete(file);
+        }
+    }
+
+    // exports the strings published after a line is read from stdin: file, number of events
+    public static class ExporterProcess {
+        public static void main(String[] args) throws IOException, InterruptedException {
+            int numOfReps = Integer.parseInt(args[1]);
+            EventBus bus = new EventBus(numOfReps);
+            SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+            try (SharedMemoryTransport<String> exporter =
+                         new SharedMemoryTransport<>(Paths.get(args[0]), EventCodec.utf8(), 8192, 64)) {
+                exporter.export(bus, String.class, pool);
+                System.out.println("exported");
+                System.out.flush();
+
+                new BufferedReader(new InputStreamReader(System.in)).readLine();
+                for (int i = 0; i < numOfReps; i++)
+                    bus.publishEvent(String.valueOf(i));
+                //waits for the export subscription to write the events
+                bus.shutdown();
+            }
+            pool.shutdown();
+            pool.awaitTermination(2000);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
     /****************** TEST publishEvent() *******************************/
     @Test
     public void test_delivers_all_events_from_multiple_publishers() throws InterruptedException {
@@ -178,6 +996,84 @@ public class EventBusTests {
         Assert.assertEquals(numOfReps, integerEventCounter.get());
     }
 
+    @Test
+    public void test_delivers_events_to_supertype_subscribers() throws InterruptedException {
+        int numOfReps = 100;
+        EventBus bus = new EventBus(numOfReps * 2);
+
+        AtomicInteger numberEventCounter = new AtomicInteger(0);
+        AtomicInteger charSequenceEventCounter = new AtomicInteger(0);
+        AtomicInteger objectEventCounter = new AtomicInteger(0);
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<Number> numberHandler = n -> numberEventCounter.incrementAndGet();
+            bus.subscribeEvent(numberHandler, Number.class);
+        });
+        consumersHelper.createAndStart(() -> {
+            Consumer<CharSequence> charSequenceHandler = s -> charSequenceEventCounter.incrementAndGet();
+            bus.subscribeEvent(charSequenceHandler, CharSequence.class);
+        });
+        consumersHelper.createAndStart(() -> {
+            Consumer<Object> objectHandler = o -> objectEventCounter.incrementAndGet();
+            bus.subscribeEvent(objectHandler, Object.class);
+        });
+
+        //ensure subscriptions
+        Thread.sleep(100);
+
+        for (int i = 0; i < numOfReps; i++) {
+            bus.publishEvent(i);
+            bus.publishEvent("" + i);
+        }
+
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(numOfReps, numberEventCounter.get());
+        Assert.assertEquals(numOfReps, charSequenceEventCounter.get());
+        Assert.assertEquals(numOfReps * 2, objectEventCounter.get());
+    }
+
+    @Test
+    public void test_slow_subscriber_does_not_delay_other_types() throws InterruptedException {
+        int numOfReps = 100;
+        EventBus bus = new EventBus(numOfReps);
+        CountDownLatch releaseStringHandler = new CountDownLatch(1);
+        CountDownLatch integersDelivered = new CountDownLatch(numOfReps);
+
+        Helper consumersHelper = new Helper();
+        consumersHelper.createAndStart(() -> {
+            Consumer<String> stringHandler = s -> {
+                try {
+                    releaseStringHandler.await();
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+            };
+            bus.subscribeEvent(stringHandler, String.class);
+        });
+        consumersHelper.createAndStart(() -> {
+            Consumer<Integer> integerHandler = i -> integersDelivered.countDown();
+            bus.subscribeEvent(integerHandler, Integer.class);
+        });
+
+        //ensure subscriptions
+        Thread.sleep(100);
+
+        bus.publishEvent("blocks the string subscriber");
+        for (int i = 0; i < numOfReps; i++) {
+            bus.publishEvent("" + i);
+            bus.publishEvent(i);
+        }
+
+        Assert.assertTrue(integersDelivered.await(2, TimeUnit.SECONDS));
+
+        releaseStringHandler.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+    }
+
     @Test
     public void test_publisher_illegalStateException() throws InterruptedException {
         int numOfReps = 1000;
@@ -237,4 +1133,451 @@ public class EventBusTests {
         //times 2 because there's 2 publishers for each iteration
         Assert.assertEquals(maxPending * 2, eventsProcessed.get());
     }
+
+    @Test
+    public void test_events_published_while_shutting_down_are_delivered() throws InterruptedException {
+        int numOfPublishers = 4;
+        int maxEventsPerPublisher = 10000;
+        for (int round = 0; round < 20; round++) {
+            EventBus bus = new EventBus(numOfPublishers * maxEventsPerPublisher);
+            AtomicInteger eventsPublished = new AtomicInteger(0);
+            AtomicInteger eventsProcessed = new AtomicInteger(0);
+
+            Helper producersHelper = new Helper();
+            Helper consumersHelper = new Helper();
+
+            consumersHelper.createAndStart(() -> {
+                Consumer<Integer> handler = i -> eventsProcessed.getAndIncrement();
+                bus.subscribeEvent(handler, Integer.class);
+            });
+
+            //ensure subscription
+            Thread.sleep(50);
+
+            CountDownLatch started = new CountDownLatch(numOfPublishers);
+            for (int p = 0; p < numOfPublishers; p++) {
+                producersHelper.createAndStart(() -> {
+                    started.countDown();
+                    try {
+                        for (int i = 0; i < maxEventsPerPublisher; i++) {
+                            bus.publishEvent(i);
+                            eventsPublished.getAndIncrement();
+                        }
+                    } catch (IllegalStateException e) {
+                        // expected once the bus is shutting down
+                    }
+                });
+            }
+
+            started.await();
+            bus.shutdown();
+            producersHelper.join();
+            consumersHelper.join();
+
+            Assert.assertEquals(eventsPublished.get(), eventsProcessed.get());
+        }
+    }
+
+    /****************** TEST OverflowPolicy *******************************/
+    // without a policy if it is null
+    private static void subscribeBlockedOnFirstEvent(EventBus bus, Helper consumersHelper, CountDownLatch release,
+                                                     List<Integer> received, EventBus.OverflowPolicy policy) {
+        consumersHelper.createAndStart(() -> {
+            Consumer<Integer> handler = i -> {
+                received.add(i);
+                if(received.size() == 1) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Assert.fail();
+                    }
+                }
+            };
+            if(policy == null)
+                bus.subscribeEvent(handler, Integer.class);
+            else
+                bus.subscribeEvent(handler, Integer.class, policy);
+        });
+    }
+
+    @Test
+    public void test_drop_newest_counts_dropped_events() throws InterruptedException {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.dropNewest();
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, policy);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(-1);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        for (int i = 0; i < maxPending * 2; i++)
+            bus.publishEvent(i);
+
+        release.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(maxPending, policy.getDroppedCount());
+        Assert.assertEquals(maxPending + 1, received.size());
+        Assert.assertEquals(maxPending - 1, (int) received.get(maxPending));
+    }
+
+    @Test
+    public void test_drop_oldest_keeps_latest_events() throws InterruptedException {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.dropOldest();
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, policy);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(-1);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        for (int i = 0; i < maxPending * 2; i++)
+            bus.publishEvent(i);
+
+        release.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(maxPending, policy.getDroppedCount());
+        Assert.assertEquals(maxPending + 1, received.size());
+        Assert.assertEquals(maxPending, (int) received.get(1));
+        Assert.assertEquals(maxPending * 2 - 1, (int) received.get(maxPending));
+    }
+
+    @Test
+    public void test_block_waits_for_space() throws InterruptedException {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.block(5000);
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, policy);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        AtomicInteger published = new AtomicInteger(0);
+        Helper producersHelper = new Helper();
+        producersHelper.createAndStart(() -> {
+            for (int i = 0; i < maxPending * 3; i++) {
+                bus.publishEvent(i);
+                published.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(500);
+        //the publisher is blocked on the full buffer
+        Assert.assertEquals(maxPending + 1, published.get());
+
+        release.countDown();
+        producersHelper.join();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(0, policy.getDroppedCount());
+        Assert.assertEquals(maxPending * 3, received.size());
+    }
+
+    @Test
+    public void test_block_in_pool_worker_is_compensated() throws InterruptedException {
+        int maxPending = 1;
+        int numOfEvents = 10;
+        EventBus bus = new EventBus(maxPending);
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.block(5000);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1, 1000);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        Consumer<Integer> handler = received::add;
+        bus.subscribeEventAsync(handler, Integer.class, pool, policy);
+
+        //the publisher takes the only worker
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch published = new CountDownLatch(1);
+        Assert.assertTrue(pool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+            for (int i = 1; i < numOfEvents; i++)
+                bus.publishEvent(i);
+            published.countDown();
+        }, 0));
+
+        //fills the buffer and waits for a worker to run the drain
+        Helper producersHelper = new Helper();
+        producersHelper.createAndStart(() -> bus.publishEvent(0));
+        Thread.sleep(100);
+
+        //the drain runs on a compensation worker while the publisher waits for space
+        start.countDown();
+        Assert.assertTrue(published.await(2000, TimeUnit.MILLISECONDS));
+        producersHelper.join();
+        bus.shutdown();
+
+        Assert.assertEquals(0, policy.getDroppedCount());
+        Assert.assertEquals(numOfEvents, received.size());
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_block_drops_event_on_timeout() throws InterruptedException {
+        int maxPending = 1;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.block(100);
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, policy);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(0);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        bus.publishEvent(1);
+        long start = System.currentTimeMillis();
+        bus.publishEvent(2);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+
+        release.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(1, policy.getDroppedCount());
+        Assert.assertEquals(Arrays.asList(0, 1), received);
+    }
+
+    @Test
+    public void test_conflate_keeps_latest_event_of_each_key() throws InterruptedException {
+        int maxPending = 10;
+        int numOfKeys = 5;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus.OverflowPolicy policy = EventBus.OverflowPolicy.<Integer>conflate(i -> i % numOfKeys);
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, policy);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(-1);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        for (int i = 0; i < numOfKeys * 10; i++)
+            bus.publishEvent(i);
+
+        release.countDown();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(numOfKeys * 9, policy.getDroppedCount());
+        Assert.assertEquals(Arrays.asList(-1, 45, 46, 47, 48, 49), received);
+    }
+
+    /****************** TEST getStats() *******************************/
+    @Test
+    public void test_stats() throws Exception {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, EventBus.OverflowPolicy.dropNewest());
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        bus.publishEvent(-1);
+        //ensure the first event is being handled
+        Thread.sleep(100);
+        for (int i = 0; i < maxPending * 2; i++)
+            bus.publishEvent(i);
+        bus.publishEvent("without subscribers");
+
+        EventBusStats stats = bus.getStats();
+        Assert.assertEquals(maxPending * 2 + 2, stats.getPublishedCount());
+        Assert.assertEquals(1, stats.getSubscriptionsCount());
+        Assert.assertEquals(1, stats.getEventTypes().size());
+
+        EventBusStats.EventTypeStats typeStats = stats.getEventTypes().get(0);
+        Assert.assertEquals(Integer.class.getName(), typeStats.getEventType());
+        Assert.assertEquals(maxPending * 2 + 1, typeStats.getPublishedCount());
+        Assert.assertEquals(maxPending, typeStats.getDroppedCount());
+        Assert.assertEquals(maxPending, typeStats.getBufferDepth());
+        Assert.assertEquals(0, typeStats.getDeliveredCount());
+
+        ObjectName name = bus.registerMBean("test_stats");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals((long) maxPending, server.getAttribute(name, "DroppedCount"));
+        Assert.assertEquals(1, ((Object[]) server.getAttribute(name, "EventTypes")).length);
+
+        release.countDown();
+        //ensure the pending events are handled
+        Thread.sleep(100);
+
+        EventBusStats.SubscriberStats subscriberStats = bus.getStats().getEventTypes().get(0).getSubscribers().get(0);
+        Assert.assertEquals(maxPending + 1, subscriberStats.getDeliveredCount());
+        Assert.assertEquals(0, subscriberStats.getBufferDepth());
+        Assert.assertEquals(maxPending + 1, subscriberStats.getHandlerTimeNanos().getCount());
+        Assert.assertTrue(subscriberStats.getHandlerTimeNanos().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+        CompositeData typeData = ((CompositeData[]) server.getAttribute(name, "EventTypes"))[0];
+        CompositeData subscriberData = ((CompositeData[]) typeData.get("subscribers"))[0];
+        CompositeData handlerTime = (CompositeData) subscriberData.get("handlerTimeNanos");
+        Assert.assertTrue((long) handlerTime.get("max") >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        server.unregisterMBean(name);
+        bus.shutdown();
+        consumersHelper.join();
+    }
+
+    /****************** TEST SHARED_RING mode *******************************/
+    @Test
+    public void test_shared_ring_delivers_all_events_to_all_subscribers() throws InterruptedException {
+        int numOfSubscribers = 8;
+        int numOfReps = 10000;
+        EventBus bus = new EventBus(64, EventBus.DeliveryMode.SHARED_RING);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+        AtomicBoolean outOfOrder = new AtomicBoolean(false);
+
+        Helper consumersHelper = new Helper();
+        for (int i = 0; i < numOfSubscribers; i++) {
+            AtomicInteger expected = new AtomicInteger(0);
+            Consumer<Integer> handler = n -> {
+                if(n != expected.getAndIncrement())
+                    outOfOrder.set(true);
+                eventsProcessed.incrementAndGet();
+            };
+            if(i % 2 == 0)
+                consumersHelper.createAndStart(() -> bus.subscribeEvent(handler, Integer.class));
+            else
+                bus.subscribeEventAsync(handler, Integer.class, pool);
+        }
+
+        //ensure subscriptions
+        Thread.sleep(100);
+
+        for (int i = 0; i < numOfReps; i++)
+            bus.publishEvent(i);
+
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertFalse(outOfOrder.get());
+        Assert.assertEquals(numOfSubscribers * numOfReps, eventsProcessed.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_shared_ring_publisher_waits_for_slowest_subscriber() throws InterruptedException {
+        int maxPending = 10;
+        EventBus bus = new EventBus(maxPending, EventBus.DeliveryMode.SHARED_RING);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+        Helper consumersHelper = new Helper();
+        subscribeBlockedOnFirstEvent(bus, consumersHelper, release, received, null);
+
+        //ensure subscription
+        Thread.sleep(100);
+
+        AtomicInteger published = new AtomicInteger(0);
+        Helper producersHelper = new Helper();
+        producersHelper.createAndStart(() -> {
+            for (int i = 0; i < maxPending * 3; i++) {
+                bus.publishEvent(i);
+                published.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(500);
+        //the first event is being handled and the ring is full
+        Assert.assertEquals(maxPending + 1, published.get());
+
+        release.countDown();
+        producersHelper.join();
+        bus.shutdown();
+        consumersHelper.join();
+
+        Assert.assertEquals(maxPending * 3, received.size());
+    }
+
+    @Test
+    public void test_shared_ring_handler_publishing_its_own_type_does_not_wait_for_itself() throws InterruptedException {
+        int maxPending = 2;
+        EventBus bus = new EventBus(maxPending, EventBus.DeliveryMode.SHARED_RING);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+        //the ring is full after the first maxPending, the next ones would wait for the handler publishing them
+        Consumer<Integer> handler = n -> {
+            received.add(n);
+            if(n == 0) {
+                for (int i = 1; i <= maxPending + 2; i++)
+                    bus.publishEvent(i);
+            }
+        };
+        bus.subscribeEventAsync(handler, Integer.class, pool);
+
+        bus.publishEvent(0);
+        Thread.sleep(200);
+        Assert.assertEquals(2, bus.getStats().getEventTypes().get(0).getDroppedCount());
+        bus.shutdown();
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_shared_ring_rejects_overflow_policies() throws InterruptedException {
+        EventBus bus = new EventBus(10, EventBus.DeliveryMode.SHARED_RING);
+        Consumer<Integer> handler = n -> {};
+        bus.subscribeEvent(handler, Integer.class, EventBus.OverflowPolicy.dropOldest());
+    }
+
+    @Test
+    public void test_shared_ring_rejects_explicit_drop_newest() {
+        EventBus bus = new EventBus(10, EventBus.DeliveryMode.SHARED_RING);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        Consumer<Integer> handler = n -> {};
+        try {
+            bus.subscribeEventAsync(handler, Integer.class, pool, EventBus.OverflowPolicy.dropNewest());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        //the ring gates the publishers of subscriptions without a policy
+        EventBus.Subscription subscription = bus.subscribeEventAsync(handler, Integer.class, pool);
+        Assert.assertTrue(subscription.isActive());
+        bus.shutdown();
+        pool.shutdown();
+    }
 }
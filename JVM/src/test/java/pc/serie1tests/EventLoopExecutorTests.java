@@ -0,0 +1,141 @@
+package pc.serie1tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pc.Helper;
+import pc.serie1.eventLoop.EventLoopExecutor;
+import pc.serie1.eventLoop.IdleStrategy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rules:
+ *  -> Executor has a fixed number of loops, each one a thread with its own inbox;
+ *  -> Loops wait for work according to an IdleStrategy;
+ *
+ *  -> execute(key, command):
+ *       o Commands with the same key always execute in the same loop, in submission order.
+ *  -> execute(command):
+ *       o Called from a loop, the command executes in that loop, otherwise loops are used round robin.
+ *       o If the executor is in shutdown mode, the method throws RejectedExecutionException.
+ *
+ *  -> Shutdown(): Puts the executor in shutdown, loops end after executing the work already submitted.
+ *
+ *  -> awaitTermination(): Returns TRUE if all submitted work is finished, FALSE in case of timeout.
+ *
+ */
+public class EventLoopExecutorTests {
+
+    private static final IdleStrategy[] STRATEGIES = {
+            IdleStrategy.busySpin(),
+            IdleStrategy.yielding(),
+            IdleStrategy.backoff(100, 100, 1000000),
+            IdleStrategy.blocking()
+    };
+
+    /****************** TEST execute() *******************************/
+    @Test
+    public void test_same_key_executes_in_same_loop_in_order() throws InterruptedException {
+        int numOfKeys = 16;
+        int numOfReps = 10000;
+        for (IdleStrategy strategy : STRATEGIES) {
+            EventLoopExecutor executor = new EventLoopExecutor(4, strategy);
+            ConcurrentHashMap<Integer, Thread> keyThreads = new ConcurrentHashMap<>();
+            int[] lastExecuted = new int[numOfKeys];
+            AtomicBoolean movedOrOutOfOrder = new AtomicBoolean(false);
+
+            Helper producers = new Helper();
+            for (int k = 0; k < numOfKeys; k++) {
+                int key = k;
+                producers.createAndStart(() -> {
+                    for (int i = 1; i <= numOfReps; i++) {
+                        int message = i;
+                        executor.execute(key, () -> {
+                            Thread th = keyThreads.computeIfAbsent(key, ky -> Thread.currentThread());
+                            if(th != Thread.currentThread() || lastExecuted[key] != message - 1)
+                                movedOrOutOfOrder.set(true);
+                            lastExecuted[key] = message;
+                        });
+                    }
+                });
+            }
+            producers.join();
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5000));
+            Assert.assertFalse(movedOrOutOfOrder.get());
+            for (int k = 0; k < numOfKeys; k++)
+                Assert.assertEquals(numOfReps, lastExecuted[k]);
+        }
+    }
+
+    @Test
+    public void test_execute_from_loop_stays_in_loop() throws InterruptedException {
+        EventLoopExecutor executor = new EventLoopExecutor(4, IdleStrategy.blocking());
+        AtomicBoolean sameThread = new AtomicBoolean(false);
+
+        executor.execute(() -> {
+            Thread outer = Thread.currentThread();
+            executor.execute(() -> sameThread.set(outer == Thread.currentThread()));
+        });
+
+        Thread.sleep(200);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1000));
+        Assert.assertTrue(sameThread.get());
+    }
+
+    @Test
+    public void test_idle_loops_wake_up() throws InterruptedException {
+        for (IdleStrategy strategy : STRATEGIES) {
+            EventLoopExecutor executor = new EventLoopExecutor(2, strategy);
+            AtomicInteger executedCounter = new AtomicInteger(0);
+
+            //let loops reach their deepest idle state
+            Thread.sleep(100);
+            for (int i = 0; i < 10; i++)
+                executor.execute(executedCounter::incrementAndGet);
+
+            Assert.assertTrue(executor.awaitTermination(1000));
+            Assert.assertEquals(10, executedCounter.get());
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(1000));
+        }
+    }
+
+    @Test
+    public void test_execute_RejectedExecutionException() throws InterruptedException {
+        EventLoopExecutor executor = new EventLoopExecutor(2, IdleStrategy.blocking());
+        executor.shutdown();
+
+        try {
+            executor.execute(() -> Assert.fail());
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertTrue(executor.awaitTermination(1000));
+    }
+
+    /****************** TEST awaitTermination() *******************************/
+    @Test
+    public void test_awaitTermination_timeout() throws InterruptedException {
+        EventLoopExecutor executor = new EventLoopExecutor(2, IdleStrategy.blocking());
+
+        executor.execute(() -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+        });
+
+        executor.shutdown();
+        Assert.assertFalse(executor.awaitTermination(200));
+        Assert.assertTrue(executor.awaitTermination(2000));
+    }
+}
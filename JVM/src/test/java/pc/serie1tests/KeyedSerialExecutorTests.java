@@ -0,0 +1,186 @@
+package pc.serie1tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pc.Helper;
+import pc.serie1.KeyedSerialExecutor;
+import pc.serie1.SimpleThreadPoolExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rules:
+ *  -> Commands are executed by a SimpleThreadPoolExecutor;
+ *
+ *  -> execute():
+ *       o Commands with the same key are executed one at a time, in the order they were submitted;
+ *       o Commands with different keys may execute in parallel;
+ *       o Doesn't wait for a worker when the pool is busy, the key waits in the pool queue;
+ *       o Keys without pending commands don't keep any state;
+ *       o Command exceptions go to the exception handler of the pool;
+ *       o Throws RejectedExecutionException if the pool is shutdown, without keeping the key.
+ *
+ */
+public class KeyedSerialExecutorTests {
+
+    @Test
+    public void test_same_key_commands_execute_in_order() throws InterruptedException {
+        int numOfKeys = 10;
+        int numOfReps = 10000;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(8, 8, 1000);
+        KeyedSerialExecutor<Integer> executor = new KeyedSerialExecutor<>(pool);
+
+        int[] lastExecuted = new int[numOfKeys];
+        AtomicInteger[] running = new AtomicInteger[numOfKeys];
+        AtomicBoolean outOfOrder = new AtomicBoolean(false);
+        AtomicBoolean concurrentExecution = new AtomicBoolean(false);
+        for (int k = 0; k < numOfKeys; k++)
+            running[k] = new AtomicInteger(0);
+
+        //one producer per key, so submission order is well defined
+        Helper producers = new Helper();
+        for (int k = 0; k < numOfKeys; k++) {
+            int key = k;
+            producers.createAndStart(() -> {
+                for (int i = 1; i <= numOfReps; i++) {
+                    int message = i;
+                    executor.execute(key, () -> {
+                        if(running[key].incrementAndGet() != 1)
+                            concurrentExecution.set(true);
+                        if(lastExecuted[key] != message - 1)
+                            outOfOrder.set(true);
+                        lastExecuted[key] = message;
+                        running[key].decrementAndGet();
+                    });
+                }
+            });
+        }
+        producers.join();
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5000));
+
+        Assert.assertFalse(outOfOrder.get());
+        Assert.assertFalse(concurrentExecution.get());
+        for (int k = 0; k < numOfKeys; k++)
+            Assert.assertEquals(numOfReps, lastExecuted[k]);
+        Assert.assertEquals(0, executor.getActiveKeysCount());
+    }
+
+    @Test
+    public void test_different_keys_execute_in_parallel() throws InterruptedException {
+        int numOfKeys = 4;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(numOfKeys, numOfKeys, 1000);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+
+        CountDownLatch allRunning = new CountDownLatch(numOfKeys);
+        AtomicBoolean sameKeyRan = new AtomicBoolean(false);
+        for (int k = 0; k < numOfKeys; k++) {
+            executor.execute("key" + k, () -> {
+                allRunning.countDown();
+                try {
+                    allRunning.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+            });
+        }
+        //must wait for the first command of key0, which only ends when all keys are running
+        executor.execute("key0", () -> sameKeyRan.set(allRunning.getCount() == 0));
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5000));
+
+        Assert.assertEquals(0, allRunning.getCount());
+        Assert.assertTrue(sameKeyRan.get());
+    }
+
+    @Test
+    public void test_execute_does_not_wait_for_a_busy_pool() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1, 1000);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch executed = new CountDownLatch(2);
+
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+        }, 1000);
+
+        long start = System.nanoTime();
+        executor.execute("a", executed::countDown);
+        executor.execute("b", executed::countDown);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+        release.countDown();
+        Assert.assertTrue(executed.await(2000, TimeUnit.MILLISECONDS));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        Assert.assertEquals(0, pool.getStats().getTimedOutCount());
+    }
+
+    @Test
+    public void test_command_exception_does_not_stop_key() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        AtomicInteger executedCounter = new AtomicInteger(0);
+
+        executor.execute("key", () -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+            throw new IllegalStateException("expected by the test");
+        });
+        executor.execute("key", executedCounter::incrementAndGet);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+
+        Assert.assertEquals(1, executedCounter.get());
+    }
+
+    @Test
+    public void test_command_exception_goes_to_pool_handler() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        AtomicReference<Throwable> handled = new AtomicReference<>();
+        pool.setExceptionHandler((command, e) -> handled.set(e));
+
+        IllegalStateException exception = new IllegalStateException("expected by the test");
+        executor.execute("key", () -> {
+            throw exception;
+        });
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        Assert.assertSame(exception, handled.get());
+    }
+
+    @Test
+    public void test_execute_after_pool_shutdown_is_rejected() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.execute("key", () -> { });
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            Assert.assertEquals(0, executor.getActiveKeysCount());
+        }
+    }
+}
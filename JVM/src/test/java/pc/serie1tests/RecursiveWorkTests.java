@@ -0,0 +1,153 @@
+package pc.serie1tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pc.serie1.RecursiveWork;
+import pc.serie1.SimpleThreadPoolExecutor;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rules:
+ *  -> RecursiveWork is executed by a SimpleThreadPoolExecutor with invoke();
+ *
+ *  -> fork(): Makes the work available to other workers of the pool.
+ *  -> join(): Returns the result of the work, computing it if nobody started it yet.
+ *       o While the work is executed by another worker, the joiner executes other forked work,
+ *       so recursion deeper than maxPoolSize doesn't deadlock the pool.
+ *       o Exceptions thrown by compute() are rethrown by join().
+ *
+ */
+public class RecursiveWorkTests {
+
+    private static class Sum extends RecursiveWork<Long> {
+        private static final int THRESHOLD = 1000;
+        private final long[] values;
+        private final int from, to;
+        private final Set<Thread> threads;
+
+        Sum(long[] values, int from, int to, Set<Thread> threads) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.threads = threads;
+        }
+
+        @Override
+        protected Long compute() {
+            threads.add(Thread.currentThread());
+            if(to - from <= THRESHOLD) {
+                try {
+                    //give the other workers time to take forked work
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+                long sum = 0;
+                for (int i = from; i < to; i++)
+                    sum += values[i];
+                return sum;
+            }
+
+            int middle = (from + to) >>> 1;
+            Sum left = new Sum(values, from, middle, threads);
+            Sum right = new Sum(values, middle, to, threads);
+            right.fork();
+            return left.invoke() + right.join();
+        }
+    }
+
+    private static class Fibonacci extends RecursiveWork<Integer> {
+        private final int n;
+
+        Fibonacci(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected Integer compute() {
+            if(n <= 1)
+                return n;
+            Fibonacci f1 = new Fibonacci(n - 1);
+            Fibonacci f2 = new Fibonacci(n - 2);
+            f1.fork();
+            f2.fork();
+            //joined in the opposite order of the fork, so the joiner must help
+            return f1.join() + f2.join();
+        }
+    }
+
+    @Test
+    public void test_recursive_sum() throws InterruptedException {
+        int size = 100000;
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++)
+            values[i] = i;
+
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(4, 1000);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        long sum = pool.invoke(new Sum(values, 0, size, threads));
+
+        Assert.assertEquals((long) size * (size - 1) / 2, sum);
+        Assert.assertTrue(threads.size() > 1);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_recursion_deeper_than_pool_size() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+
+        int result = pool.invoke(new Fibonacci(20));
+
+        Assert.assertEquals(6765, result);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_join_outside_pool_computes_in_caller() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        long[] values = {1, 2, 3};
+
+        Sum work = new Sum(values, 0, values.length, threads);
+        work.fork();
+
+        Assert.assertEquals(6, (long) work.join());
+        Assert.assertTrue(work.isDone());
+        Assert.assertEquals(1, threads.size());
+        Assert.assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void test_join_rethrows_exception() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+
+        RecursiveWork<Integer> failing = new RecursiveWork<Integer>() {
+            @Override
+            protected Integer compute() {
+                RecursiveWork<Integer> child = new RecursiveWork<Integer>() {
+                    @Override
+                    protected Integer compute() {
+                        throw new IllegalStateException();
+                    }
+                };
+                return child.fork().join();
+            }
+        };
+
+        try {
+            pool.invoke(failing);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+}
@@ -0,0 +1,247 @@
+package pc.serie1tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pc.serie1.SimpleThreadPoolExecutor;
+import pc.serie1.scheduler.ScheduledTask;
+import pc.serie1.scheduler.SimpleScheduledExecutor;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rules:
+ *  -> Scheduler delivers due work to a SimpleThreadPoolExecutor, work the saturated pool didn't accept
+ *      within a tick is retried on the next ones;
+ *  -> Time advances in ticks of tickDuration, work is never executed before its delay;
+ *
+ *  -> schedule(): Executes the command once after delay.
+ *  -> scheduleAtFixedRate(): Executes the command after initialDelay and then every period,
+ *      measured from the previous deadline.
+ *  -> scheduleWithFixedDelay(): Executes the command after initialDelay and then delay after
+ *      the end of the previous execution.
+ *  -> ScheduledTask.cancel(): The command is not executed again, returns FALSE if it was already done or cancelled.
+ *
+ *  -> Shutdown(): Cancels pending work, schedule methods throw RejectedExecutionException.
+ *
+ */
+public class SimpleScheduledExecutorTests {
+
+    /****************** TEST schedule() *******************************/
+    @Test
+    public void test_schedule_respects_delays() throws InterruptedException {
+        int numOfTimers = 500;
+        int maxDelay = 5000;
+        int tolerance = 200;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(4, 4, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 1);
+        Random random = new Random(0);
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        AtomicInteger earlyCounter = new AtomicInteger(0);
+        AtomicInteger lateCounter = new AtomicInteger(0);
+        for (int i = 0; i < numOfTimers; i++) {
+            int delay = random.nextInt(maxDelay);
+            long expected = System.currentTimeMillis() + delay;
+            scheduler.schedule(() -> {
+                long now = System.currentTimeMillis();
+                if(now < expected)
+                    earlyCounter.incrementAndGet();
+                if(now > expected + tolerance)
+                    lateCounter.incrementAndGet();
+                executedCounter.incrementAndGet();
+            }, delay);
+        }
+
+        Thread.sleep(maxDelay + tolerance * 2);
+
+        Assert.assertEquals(numOfTimers, executedCounter.get());
+        Assert.assertEquals(0, earlyCounter.get());
+        Assert.assertEquals(0, lateCounter.get());
+
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(1000));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_cancel() throws InterruptedException {
+        int numOfTimers = 100;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(4, 4, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 10);
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        List<ScheduledTask> tasks = new LinkedList<>();
+        for (int i = 0; i < numOfTimers; i++)
+            tasks.add(scheduler.schedule(executedCounter::incrementAndGet, 300));
+
+        int i = 0;
+        for (ScheduledTask task : tasks) {
+            if(i++ % 2 == 0) {
+                Assert.assertTrue(task.cancel());
+                Assert.assertTrue(task.isCancelled());
+                Assert.assertFalse(task.cancel());
+            }
+        }
+
+        Thread.sleep(600);
+
+        Assert.assertEquals(numOfTimers / 2, executedCounter.get());
+        for (ScheduledTask task : tasks) {
+            Assert.assertTrue(task.isDone());
+        }
+
+        scheduler.shutdown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    /****************** TEST periodic *******************************/
+    @Test
+    public void test_schedule_at_fixed_rate() throws InterruptedException {
+        int period = 50;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 1);
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        ScheduledTask task = scheduler.scheduleAtFixedRate(executedCounter::incrementAndGet, 0, period);
+
+        Thread.sleep(period * 20 + period / 2);
+        Assert.assertTrue(task.cancel());
+        int executed = executedCounter.get();
+
+        Assert.assertTrue(executed >= 18 && executed <= 22);
+
+        //no more executions after cancel
+        Thread.sleep(period * 3);
+        Assert.assertTrue(executedCounter.get() <= executed + 1);
+
+        scheduler.shutdown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_schedule_with_fixed_delay() throws InterruptedException {
+        int delay = 50;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 1);
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        AtomicLong lastEnd = new AtomicLong(0);
+        AtomicInteger tooSoonCounter = new AtomicInteger(0);
+        ScheduledTask task = scheduler.scheduleWithFixedDelay(() -> {
+            long start = System.currentTimeMillis();
+            if(lastEnd.get() != 0 && start - lastEnd.get() < delay)
+                tooSoonCounter.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+            executedCounter.incrementAndGet();
+            lastEnd.set(System.currentTimeMillis());
+        }, 0, delay);
+
+        Thread.sleep(delay * 20);
+        task.cancel();
+
+        int executed = executedCounter.get();
+        Assert.assertTrue(executed >= 8 && executed <= 11);
+        Assert.assertEquals(0, tooSoonCounter.get());
+
+        scheduler.shutdown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    /****************** TEST shutdown() *******************************/
+    @Test
+    public void test_shutdown_discards_pending_work() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 1);
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        scheduler.schedule(executedCounter::incrementAndGet, 200);
+
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(1000));
+
+        try {
+            scheduler.schedule(executedCounter::incrementAndGet, 0);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        Thread.sleep(400);
+        Assert.assertEquals(0, executedCounter.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_shutdown_cancels_pending_tasks() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 2, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 1);
+
+        ScheduledTask once = scheduler.schedule(() -> {}, 200);
+        ScheduledTask periodic = scheduler.scheduleAtFixedRate(() -> {}, 200, 10);
+
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(1000));
+
+        Assert.assertTrue(once.isCancelled());
+        Assert.assertTrue(once.isDone());
+        Assert.assertTrue(periodic.isCancelled());
+        Assert.assertTrue(periodic.isDone());
+        Assert.assertFalse(once.cancel());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_work_is_retried_while_pool_is_saturated() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1, 1000);
+        SimpleScheduledExecutor scheduler = new SimpleScheduledExecutor(pool, 5);
+
+        CountDownLatch release = new CountDownLatch(1);
+        Assert.assertTrue(pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }, 0));
+
+        CountDownLatch executed = new CountDownLatch(2);
+        ScheduledTask first = scheduler.schedule(executed::countDown, 0);
+        ScheduledTask second = scheduler.schedule(executed::countDown, 20);
+
+        //both expire while the only worker is busy
+        Thread.sleep(100);
+        Assert.assertFalse(first.isDone());
+        Assert.assertFalse(second.isDone());
+
+        release.countDown();
+        Assert.assertTrue(executed.await(1000, TimeUnit.MILLISECONDS));
+        Thread.sleep(20);
+        Assert.assertTrue(first.isDone());
+        Assert.assertTrue(second.isDone());
+        Assert.assertFalse(first.isCancelled());
+
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(1000));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+}
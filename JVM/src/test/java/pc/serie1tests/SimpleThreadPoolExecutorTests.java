@@ -4,14 +4,25 @@ import org.junit.Assert;
 import org.junit.Test;
 import pc.Helper;
 import pc.serie1.SimpleThreadPoolExecutor;
-
+import pc.serie1.ThreadPoolStats;
+import pc.serie1.messageQueue.MessageQueue;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Rules:
  *  -> Pool has fixed maxPoolSize;
  *  -> Threads have a keepAliveTime when in waiting state;
+ *  -> Up to corePoolSize threads never time out, unless allowCoreThreadTimeOut(true) is called;
  *
  *  -> Execute():
  *       o Cases of success:
@@ -29,6 +40,24 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *          - If the thread enters waiting state and it's interrupted, then throws
  *          InterruptedException.
  *
+ *  -> prestartAllCoreThreads(): Starts all core threads, waiting for work, and returns how many were started.
+ *
+ *  -> enableAdaptiveSizing(): The pool grows up to a target, between corePoolSize and maxPoolSize,
+ *      that follows the completed work per second instead of maxPoolSize.
+ *
+ *  -> Workers blocked in library primitives (MessageQueue, KeyedExchanger, execute() of their own pool)
+ *      are compensated by extra workers, up to setMaxCompensationThreads().
+ *
+ *  -> Workers survive work that throws, the exception goes to the handler set with setExceptionHandler().
+ *
+ *  -> getStats(): Returns a snapshot of counters, worker counts and queue wait / run time histograms,
+ *      also available through JMX after registerMBean().
+ *
+ *  -> executeAll(): Delivers a collection of commands at once, with the same rules of execute().
+ *      Returns how many were delivered before timeout, the others are not executed.
+ *
+ *  -> Workers take a share of the queued work at once, the share not started yet is taken by workers without work.
+ *
  *  -> Shutdown(): Puts the pool in shutdown and exits.
  *
  *  -> awaitTermination(): Allows pool to end the work already in execution or in wait to execute.
@@ -244,4 +273,395 @@ public class SimpleThreadPoolExecutorTests {
 
         Assert.assertTrue(wasInterruptedException.get());
     }
+
+    /*********************************** core pool tests ***********************************/
+    @Test
+    public void test_prestart_all_core_threads() throws InterruptedException {
+        int coreSize = 5;
+        int maxSize = 20;
+        int keepAliveTime = 100;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(coreSize, maxSize, keepAliveTime);
+
+        Assert.assertEquals(coreSize, pool.prestartAllCoreThreads());
+        Assert.assertEquals(0, pool.prestartAllCoreThreads());
+        Assert.assertEquals(coreSize, pool.getPoolSize());
+
+        //core threads survive the keep alive time
+        Thread.sleep(keepAliveTime * 3);
+        Assert.assertEquals(coreSize, pool.getPoolSize());
+
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        for (int i = 0; i < coreSize; i++) {
+            boolean executed = pool.execute(executedCounter::incrementAndGet, 0);
+            Assert.assertTrue(executed);
+        }
+        Assert.assertEquals(coreSize, pool.getPoolSize());
+
+        pool.shutdown();
+        boolean allFinished = pool.awaitTermination(5000);
+
+        Assert.assertTrue(allFinished);
+        Assert.assertEquals(coreSize, executedCounter.get());
+    }
+
+    @Test
+    public void test_non_core_threads_time_out() throws InterruptedException {
+        int coreSize = 2;
+        int maxSize = 10;
+        int keepAliveTime = 100;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(coreSize, maxSize, keepAliveTime);
+
+        for (int i = 0; i < maxSize; i++) {
+            boolean executed = pool.execute(() -> {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Assert.assertFalse(true);
+                }
+            }, 0);
+            Assert.assertTrue(executed);
+        }
+        Assert.assertEquals(maxSize, pool.getPoolSize());
+
+        Thread.sleep(200 + keepAliveTime * 5);
+        Assert.assertEquals(coreSize, pool.getPoolSize());
+
+        pool.allowCoreThreadTimeOut(true);
+        Thread.sleep(keepAliveTime * 5);
+        Assert.assertEquals(0, pool.getPoolSize());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1000));
+    }
+
+    @Test
+    public void test_shutdown_stops_idle_core_threads() throws InterruptedException {
+        int coreSize = 5;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(coreSize, coreSize, 0);
+
+        pool.prestartAllCoreThreads();
+        Assert.assertEquals(coreSize, pool.getPoolSize());
+
+        pool.shutdown();
+        Thread.sleep(200);
+
+        Assert.assertEquals(0, pool.getPoolSize());
+        Assert.assertTrue(pool.awaitTermination(0));
+    }
+
+    /*********************************** statistics tests ***********************************/
+    @Test
+    public void test_stats() throws Exception {
+        int maxSize = 2;
+        int keepAliveTime = 500;
+        int runTime = 100;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, keepAliveTime);
+
+        for (int i = 0; i < maxSize * 2; i++) {
+            boolean executed = pool.execute(() -> {
+                try {
+                    Thread.sleep(runTime);
+                } catch (InterruptedException e) {
+                    Assert.assertFalse(true);
+                }
+            }, 2000);
+            Assert.assertTrue(executed);
+        }
+        Assert.assertFalse(pool.execute(() -> { }, 0));
+
+        ThreadPoolStats running = pool.getStats();
+        Assert.assertEquals(maxSize, running.getPoolSize());
+        Assert.assertEquals(maxSize, running.getActiveCount());
+        Assert.assertEquals(0, running.getIdleCount());
+        Assert.assertEquals(1, running.getTimedOutCount());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        try {
+            pool.execute(() -> { }, 0);
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        ThreadPoolStats stats = pool.getStats();
+        Assert.assertEquals(maxSize * 2, stats.getSubmittedCount());
+        Assert.assertEquals(maxSize * 2, stats.getCompletedCount());
+        Assert.assertEquals(1, stats.getRejectedCount());
+        Assert.assertEquals(maxSize, stats.getCreatedThreadCount());
+        Assert.assertEquals(maxSize, stats.getLargestPoolSize());
+        Assert.assertEquals(maxSize * 2, stats.getRunTime().getCount());
+        Assert.assertTrue(stats.getRunTime().getPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(runTime) * 0.8);
+        //the second half of the work waited for the first one to finish
+        Assert.assertTrue(stats.getQueueWaitTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(runTime) * 0.8);
+
+        ObjectName name = pool.registerMBean("test_stats");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals((long) maxSize * 2, server.getAttribute(name, "CompletedCount"));
+        Assert.assertTrue((long) server.getAttribute(name, "RunTime99thPercentileNanos") >= TimeUnit.MILLISECONDS.toNanos(runTime) * 0.8);
+        server.unregisterMBean(name);
+    }
+
+    /*********************************** adaptive sizing tests ***********************************/
+    @Test
+    public void test_adaptive_sizing_grows_for_blocking_work() throws InterruptedException {
+        int coreSize = 1;
+        int maxSize = 32;
+        int keepAliveTime = 1000;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(coreSize, maxSize, keepAliveTime);
+        pool.enableAdaptiveSizing(100);
+        Assert.assertEquals(coreSize, pool.getTargetPoolSize());
+
+        long endTime = System.currentTimeMillis() + 2000;
+        Helper submitters = new Helper();
+        for (int i = 0; i < maxSize; i++) {
+            submitters.createAndStart(() -> {
+                while (System.currentTimeMillis() < endTime) {
+                    pool.execute(() -> {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            Assert.assertFalse(true);
+                        }
+                    }, Integer.MAX_VALUE);
+                }
+            });
+        }
+        submitters.join();
+
+        int target = pool.getTargetPoolSize();
+        Assert.assertTrue(target >= 5);
+        Assert.assertTrue(pool.getStats().getLargestPoolSize() <= maxSize);
+
+        pool.disableAdaptiveSizing();
+        Assert.assertEquals(maxSize, pool.getTargetPoolSize());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5000));
+    }
+
+    /*********************************** managed blocking tests ***********************************/
+    @Test
+    public void test_blocked_workers_are_compensated() throws InterruptedException {
+        int maxSize = 2;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, 500);
+        MessageQueue<String> queue = new MessageQueue<>();
+        AtomicInteger receivedCounter = new AtomicInteger(0);
+
+        for (int i = 0; i < maxSize; i++) {
+            boolean executed = pool.execute(() -> {
+                try {
+                    if(queue.receive(5000).isPresent())
+                        receivedCounter.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Assert.assertFalse(true);
+                }
+            }, 0);
+            Assert.assertTrue(executed);
+        }
+
+        //ensure workers are blocked
+        Thread.sleep(200);
+        Assert.assertEquals(maxSize, pool.getStats().getBlockedCount());
+
+        boolean executed = pool.execute(() -> {
+            for (int i = 0; i < maxSize; i++)
+                queue.send("message");
+        }, 1000);
+        Assert.assertTrue(executed);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        Assert.assertEquals(maxSize, receivedCounter.get());
+        Assert.assertEquals(0, pool.getStats().getBlockedCount());
+    }
+
+    @Test
+    public void test_compensation_is_capped() throws InterruptedException {
+        int maxSize = 2;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, 500);
+        pool.setMaxCompensationThreads(0);
+        MessageQueue<String> queue = new MessageQueue<>();
+
+        for (int i = 0; i < maxSize; i++) {
+            pool.execute(() -> {
+                try {
+                    queue.receive(1000);
+                } catch (InterruptedException e) {
+                    Assert.assertFalse(true);
+                }
+            }, 0);
+        }
+
+        //ensure workers are blocked
+        Thread.sleep(200);
+        Assert.assertFalse(pool.execute(() -> { }, 200));
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_worker_waiting_on_its_own_pool_is_compensated() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 500);
+        AtomicBoolean innerExecuted = new AtomicBoolean(false);
+        AtomicBoolean innerAccepted = new AtomicBoolean(false);
+
+        pool.execute(() -> {
+            try {
+                innerAccepted.set(pool.execute(() -> innerExecuted.set(true), 1000));
+            } catch (InterruptedException e) {
+                Assert.assertFalse(true);
+            }
+        }, 0);
+
+        //the inner execute must happen before shutdown
+        Thread.sleep(500);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        Assert.assertTrue(innerAccepted.get());
+        Assert.assertTrue(innerExecuted.get());
+    }
+
+    @Test
+    public void test_compensated_execute_returns_when_work_starts() throws InterruptedException {
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 500);
+        CountDownLatch innerAccepted = new CountDownLatch(1);
+
+        pool.execute(() -> {
+            try {
+                //the compensation worker takes the work before the caller waits for it
+                if(pool.execute(() -> { }, 10000))
+                    innerAccepted.countDown();
+            } catch (InterruptedException e) {
+                Assert.assertFalse(true);
+            }
+        }, 0);
+
+        Assert.assertTrue(innerAccepted.await(1000, TimeUnit.MILLISECONDS));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    /*********************************** exception tests ***********************************/
+    @Test
+    public void test_workers_survive_exceptions() throws InterruptedException {
+        int maxSize = 2;
+        int numOfReps = 100;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, 500);
+        AtomicInteger handledCounter = new AtomicInteger(0);
+        AtomicInteger executedCounter = new AtomicInteger(0);
+        pool.setExceptionHandler((command, e) -> {
+            if(e instanceof IllegalStateException)
+                handledCounter.incrementAndGet();
+        });
+
+        for (int i = 0; i < numOfReps; i++) {
+            boolean executed = pool.execute(() -> {
+                executedCounter.incrementAndGet();
+                throw new IllegalStateException();
+            }, 1000);
+            Assert.assertTrue(executed);
+        }
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+
+        ThreadPoolStats stats = pool.getStats();
+        Assert.assertEquals(numOfReps, executedCounter.get());
+        Assert.assertEquals(numOfReps, handledCounter.get());
+        Assert.assertEquals(numOfReps, stats.getFailedCount());
+        Assert.assertEquals(numOfReps, stats.getCompletedCount());
+        Assert.assertTrue(stats.getCreatedThreadCount() <= maxSize);
+    }
+
+    /*********************************** executeAll() tests ***********************************/
+    @Test
+    public void test_executeAll() throws InterruptedException {
+        int maxSize = 4;
+        int numOfReps = 10000;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, 500);
+        AtomicInteger executedCounter = new AtomicInteger(0);
+
+        List<Runnable> commands = new ArrayList<>();
+        for (int i = 0; i < numOfReps; i++)
+            commands.add(executedCounter::incrementAndGet);
+
+        Assert.assertEquals(numOfReps, pool.executeAll(commands, 5000));
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5000));
+        Assert.assertEquals(numOfReps, executedCounter.get());
+        Assert.assertEquals(numOfReps, pool.getStats().getSubmittedCount());
+        Assert.assertEquals(numOfReps, pool.getStats().getCompletedCount());
+    }
+
+    @Test
+    public void test_work_taken_in_advance_is_stolen_by_free_workers() throws InterruptedException {
+        int numOfReps = 20;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 500);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        CountDownLatch releaseBlocking = new CountDownLatch(1);
+        CountDownLatch quickExecuted = new CountDownLatch(numOfReps);
+
+        pool.execute(() -> await(releaseFirst), 0);
+        pool.execute(() -> await(releaseSecond), 0);
+
+        //the first one blocks the worker that takes it with a share of the others
+        List<Runnable> commands = new ArrayList<>();
+        commands.add(() -> await(releaseBlocking));
+        for (int i = 0; i < numOfReps; i++)
+            commands.add(quickExecuted::countDown);
+        Thread submitter = new Thread(() -> pool.executeAll(commands, 5000));
+        submitter.start();
+        while (pool.getStats().getQueueSize() < numOfReps + 1)
+            Thread.sleep(10);
+
+        releaseSecond.countDown();
+        while (pool.getStats().getQueueSize() > numOfReps / 2)
+            Thread.sleep(10);
+        releaseFirst.countDown();
+
+        Assert.assertTrue(quickExecuted.await(2000, TimeUnit.MILLISECONDS));
+        releaseBlocking.countDown();
+        submitter.join();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Assert.fail();
+        }
+    }
+
+    @Test
+    public void test_executeAll_timeout() throws InterruptedException {
+        int maxSize = 2;
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(maxSize, 500);
+        AtomicInteger executedCounter = new AtomicInteger(0);
+
+        List<Runnable> commands = new ArrayList<>();
+        for (int i = 0; i < maxSize * 3; i++) {
+            commands.add(() -> {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Assert.assertFalse(true);
+                }
+                executedCounter.incrementAndGet();
+            });
+        }
+
+        Assert.assertEquals(maxSize, pool.executeAll(commands, 0));
+        Assert.assertEquals(0, pool.executeAll(commands, 100));
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        Assert.assertEquals(maxSize, executedCounter.get());
+        Assert.assertEquals(maxSize * 5, pool.getStats().getTimedOutCount());
+    }
 }
@@ -0,0 +1,237 @@
+package pc.serie1tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pc.serie1.EventBus;
+import pc.serie1.EventBusFlow;
+import pc.serie1.SimpleThreadPoolExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Rules:
+ *  -> EventBusFlow.publisher(): a Flow.Publisher of the events of a type, each Flow.Subscriber only receives the
+ *     events it requested, the others wait in its bus subscription buffer (block() makes the publishers wait).
+ *     The Flow.Subscriber is completed after the last event when the bus is shutdown.
+ *       o A non-positive request cancels the subscription and signals onError, never during onNext.
+ *       o An exception thrown by onNext cancels the subscription and is reported to the pool.
+ *       o If the pool rejects the drain the subscription ends with onError.
+ *
+ *  -> EventBusFlow.subscriber(): a Flow.Subscriber that publishes the items on the bus, requesting up to
+ *     maxInFlight items ahead, and cancels the upstream when the bus is shutdown.
+ */
+public class EventBusFlowTests {
+
+    @Test
+    public void test_publisher_honors_demand() throws InterruptedException {
+        int numOfReps = 10;
+        EventBus bus = new EventBus(numOfReps);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(2, 1000);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        CountDownLatch completed = new CountDownLatch(1);
+
+        Flow.Publisher<Integer> publisher = EventBusFlow.publisher(bus, Integer.class, pool,
+                EventBus.OverflowPolicy.block(5000));
+        publisher.subscribe(new Flow.Subscriber<Integer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(3);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        for (int i = 0; i < numOfReps; i++)
+            bus.publishEvent(i);
+
+        //the events not requested wait in the subscription buffer
+        Thread.sleep(200);
+        Assert.assertEquals(3, received.size());
+
+        subscription.get().request(numOfReps);
+        bus.shutdown();
+        Assert.assertTrue(completed.await(2000, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(IntStream.range(0, numOfReps).boxed().collect(Collectors.toList()), received);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_publisher_signals_error_on_invalid_request() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        EventBusFlow.<Integer>publisher(bus, Integer.class, pool, EventBus.OverflowPolicy.dropNewest())
+                .subscribe(new Flow.Subscriber<Integer>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription s) {
+                        s.request(0);
+                    }
+
+                    @Override
+                    public void onNext(Integer item) {
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        error.set(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+
+        Assert.assertTrue(error.get() instanceof IllegalArgumentException);
+        //the subscription was cancelled, shutdown doesn't wait for it
+        bus.shutdown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+
+    @Test
+    public void test_publisher_cancels_on_errors_of_the_subscriber() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        pool.setExceptionHandler((r, e) -> reported.set(e));
+        List<String> signals = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch errorSignalled = new CountDownLatch(1);
+
+        //the first one requests 0 during onNext, the second one throws from onNext
+        for (int i = 0; i < 2; i++) {
+            boolean throwing = i == 1;
+            EventBusFlow.publisher(bus, Integer.class, pool, EventBus.OverflowPolicy.dropNewest())
+                    .subscribe(new Flow.Subscriber<Integer>() {
+                        private Flow.Subscription subscription;
+                        private volatile boolean inOnNext = false;
+
+                        @Override
+                        public void onSubscribe(Flow.Subscription s) {
+                            subscription = s;
+                            s.request(Long.MAX_VALUE);
+                        }
+
+                        @Override
+                        public void onNext(Integer item) {
+                            if(throwing)
+                                throw new IllegalStateException("onNext");
+                            inOnNext = true;
+                            subscription.request(0);
+                            signals.add("next " + item);
+                            inOnNext = false;
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            signals.add((inOnNext ? "nested " : "") + throwable.getClass().getSimpleName());
+                            errorSignalled.countDown();
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            signals.add("complete");
+                        }
+                    });
+        }
+
+        for (int i = 0; i < 5; i++)
+            bus.publishEvent(i);
+        Assert.assertTrue(errorSignalled.await(2000, TimeUnit.MILLISECONDS));
+        //both subscriptions were cancelled, shutdown doesn't wait for them
+        bus.shutdown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+
+        Assert.assertEquals(Arrays.asList("next 0", "IllegalArgumentException"), signals);
+        Assert.assertTrue(reported.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void test_publisher_signals_error_when_the_pool_rejects_the_drain() throws InterruptedException {
+        EventBus bus = new EventBus(10);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        EventBusFlow.publisher(bus, Integer.class, pool, EventBus.OverflowPolicy.dropNewest())
+                .subscribe(new Flow.Subscriber<Integer>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription s) {
+                        s.request(1);
+                    }
+
+                    @Override
+                    public void onNext(Integer item) {
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        error.set(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+        bus.publishEvent(1);
+
+        Assert.assertTrue(error.get() instanceof RejectedExecutionException);
+        bus.shutdown();
+    }
+
+    @Test
+    public void test_subscriber_publishes_items_on_the_bus() throws Exception {
+        int numOfReps = 1000;
+        EventBus bus = new EventBus(numOfReps);
+        SimpleThreadPoolExecutor pool = new SimpleThreadPoolExecutor(1, 1000);
+        AtomicInteger eventsProcessed = new AtomicInteger(0);
+        Consumer<Integer> handler = i -> eventsProcessed.incrementAndGet();
+        bus.subscribeEventAsync(handler, Integer.class, pool);
+
+        EventBusFlow.BusSubscriber<Integer> subscriber = EventBusFlow.subscriber(bus, 16);
+        try (SubmissionPublisher<Integer> upstream = new SubmissionPublisher<>()) {
+            upstream.subscribe(subscriber);
+            for (int i = 0; i < numOfReps; i++)
+                upstream.submit(i);
+        }
+        subscriber.getCompletion().get(2000, TimeUnit.MILLISECONDS);
+
+        bus.shutdown();
+        Assert.assertEquals(numOfReps, eventsProcessed.get());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(2000));
+    }
+}